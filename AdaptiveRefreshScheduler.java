@@ -0,0 +1,128 @@
+package com.example.jgroups.ecs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs a discovery refresh with a delay that adapts to what the last round saw:
+ * <ul>
+ *   <li>members changed - the next round runs after {@code minInterval}</li>
+ *   <li>nothing changed - the base interval is kept, and after {@code stableRounds} quiet
+ *       rounds the delay grows by {@code stretchFactor} up to {@code maxInterval}</li>
+ *   <li>ECS throttled - the delay doubles (up to {@code maxInterval}) until a round succeeds</li>
+ * </ul>
+ * Every delay is spread by +/- {@code jitter} so channels started together do not refresh in lockstep.
+ */
+public class AdaptiveRefreshScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveRefreshScheduler.class);
+
+    public enum Outcome { CHANGED, UNCHANGED, THROTTLED, FAILED }
+
+    private final ScheduledExecutorService executor;
+    private final Supplier<Outcome> refresh;
+    private final long baseInterval;
+    private final long minInterval;
+    private final long maxInterval;
+    private final int stableRounds;
+    private final double stretchFactor;
+    private final double jitter;
+
+    private long interval;
+    private int quietRounds;
+    private ScheduledFuture<?> next;
+
+    public AdaptiveRefreshScheduler(ScheduledExecutorService executor, Supplier<Outcome> refresh,
+                                    long baseInterval, long minInterval, long maxInterval,
+                                    int stableRounds, double stretchFactor, double jitter) {
+        this.executor = executor;
+        this.refresh = refresh;
+        this.baseInterval = baseInterval;
+        this.minInterval = Math.min(minInterval, baseInterval);
+        this.maxInterval = Math.max(maxInterval, baseInterval);
+        this.stableRounds = stableRounds;
+        this.stretchFactor = stretchFactor;
+        this.jitter = jitter;
+        this.interval = baseInterval;
+    }
+
+    public synchronized void start(long initialDelay) {
+        next = executor.schedule(this::run, initialDelay, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (next != null) {
+            next.cancel(false);
+            next = null;
+        }
+    }
+
+    // Current delay between rounds in ms, before jitter
+    public synchronized long getInterval() {
+        return interval;
+    }
+
+    private void run() {
+        Outcome outcome;
+        try {
+            outcome = refresh.get();
+        } catch (RuntimeException e) {
+            outcome = isThrottling(e) ? Outcome.THROTTLED : Outcome.FAILED;
+            log.error("Discovery refresh failed", e);
+        }
+
+        synchronized (this) {
+            if (next == null) {
+                return;  // Stopped while the round was running
+            }
+            interval = nextInterval(outcome);
+            long delay = withJitter(interval);
+            log.debug("Discovery round {}, next in {} ms", outcome, delay);
+            next = executor.schedule(this::run, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private long nextInterval(Outcome outcome) {
+        switch (outcome) {
+            case CHANGED:
+                quietRounds = 0;
+                return minInterval;
+            case THROTTLED:
+                quietRounds = 0;
+                return Math.min(maxInterval, Math.max(baseInterval, interval * 2));
+            case UNCHANGED:
+                if (++quietRounds < stableRounds) {
+                    return baseInterval;
+                }
+                return Math.min(maxInterval, Math.max(baseInterval, (long) (interval * stretchFactor)));
+            default:
+                quietRounds = 0;
+                return baseInterval;
+        }
+    }
+
+    private long withJitter(long delay) {
+        if (jitter <= 0) {
+            return delay;
+        }
+        double spread = ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+        return Math.max(1, (long) (delay * (1 + spread)));
+    }
+
+    // True if the exception, or one of its causes, is an AWS throttling error
+    public static boolean isThrottling(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SdkServiceException && ((SdkServiceException) cause).isThrottlingException()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.jgroups.ecs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.awscore.client.builder.AwsClientBuilder;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.regions.providers.DefaultAwsRegionProviderChain;
+import software.amazon.awssdk.services.ec2.Ec2AsyncClient;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ecs.EcsAsyncClient;
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.services.sqs.SqsClient;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide AWS SDK v2 clients. Region and credentials are resolved once, all sync clients
+ * share one pooled HTTP client and all async clients one event loop, and each client is only
+ * built on first use. {@link #prewarm()} builds the discovery clients and fetches credentials
+ * in the background so the first discovery round does not pay for it.
+ */
+public final class AwsClientRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(AwsClientRegistry.class);
+    private static final Region FALLBACK_REGION = Region.US_EAST_1;
+
+    // Endpoint the ECS and EC2 clients are sent to instead of AWS, e.g. an EcsApiSimulator
+    public static final String ENDPOINT_PROPERTY = "jgroups.ecs.endpoint";
+    private static volatile AwsClientRegistry shared;
+
+    private final Lazy<Region> region = new Lazy<>(AwsClientRegistry::resolveRegion);
+    private final Lazy<AwsCredentialsProvider> credentials = new Lazy<>(DefaultCredentialsProvider::create);
+    private final Lazy<SdkHttpClient> httpClient = new Lazy<>(() -> ApacheHttpClient.builder()
+            .maxConnections(64)
+            .connectionTimeout(Duration.ofSeconds(2))
+            .connectionMaxIdleTime(Duration.ofMinutes(1))
+            .build());
+    private final Lazy<SdkAsyncHttpClient> asyncHttpClient = new Lazy<>(() -> NettyNioAsyncHttpClient.builder()
+            .maxConcurrency(64)
+            .connectionTimeout(Duration.ofSeconds(2))
+            .build());
+
+    private final Lazy<EcsClient> ecs = new Lazy<>(() -> withEndpoint(EcsClient.builder())
+            .region(region()).credentialsProvider(credentials()).httpClient(httpClient.get()).build());
+    private final Lazy<Ec2Client> ec2 = new Lazy<>(() -> withEndpoint(Ec2Client.builder())
+            .region(region()).credentialsProvider(credentials()).httpClient(httpClient.get()).build());
+    private final Lazy<SqsClient> sqs = new Lazy<>(() -> SqsClient.builder()
+            .region(region()).credentialsProvider(credentials()).httpClient(httpClient.get()).build());
+    private final Lazy<EcsAsyncClient> ecsAsync = new Lazy<>(() -> withEndpoint(EcsAsyncClient.builder())
+            .region(region()).credentialsProvider(credentials()).httpClient(asyncHttpClient.get()).build());
+    private final Lazy<Ec2AsyncClient> ec2Async = new Lazy<>(() -> withEndpoint(Ec2AsyncClient.builder())
+            .region(region()).credentialsProvider(credentials()).httpClient(asyncHttpClient.get()).build());
+
+    private volatile CompletableFuture<Void> prewarm;
+
+    public static AwsClientRegistry shared() {
+        if (shared == null) {
+            synchronized (AwsClientRegistry.class) {
+                if (shared == null) {
+                    shared = new AwsClientRegistry();
+                }
+            }
+        }
+        return shared;
+    }
+
+    private static <B extends AwsClientBuilder<B, ?>> B withEndpoint(B builder) {
+        String endpoint = System.getProperty(ENDPOINT_PROPERTY);
+        return endpoint != null ? builder.endpointOverride(URI.create(endpoint)) : builder;
+    }
+
+    // Environment/system property/profile first, then the task's own availability zone
+    private static Region resolveRegion() {
+        try {
+            return new DefaultAwsRegionProviderChain().getRegion();
+        } catch (RuntimeException e) {
+            if (TaskMetadataClient.isEcs()) {
+                try {
+                    String zone = TaskMetadataClient.shared().get().getAvailabilityZone();
+                    if (zone != null && zone.length() > 1) {
+                        return Region.of(zone.substring(0, zone.length() - 1));
+                    }
+                } catch (Exception metadataFailure) {
+                    log.debug("Could not read the region from task metadata", metadataFailure);
+                }
+            }
+            log.warn("No AWS region configured, using {}", FALLBACK_REGION);
+            return FALLBACK_REGION;
+        }
+    }
+
+    public Region region() {
+        return region.get();
+    }
+
+    public AwsCredentialsProvider credentials() {
+        return credentials.get();
+    }
+
+    public EcsClient ecs() {
+        return ecs.get();
+    }
+
+    public Ec2Client ec2() {
+        return ec2.get();
+    }
+
+    public SqsClient sqs() {
+        return sqs.get();
+    }
+
+    public EcsAsyncClient ecsAsync() {
+        return ecsAsync.get();
+    }
+
+    public Ec2AsyncClient ec2Async() {
+        return ec2Async.get();
+    }
+
+    /**
+     * Resolves region and credentials and builds the ECS and EC2 clients on a background
+     * thread. Only the first call does any work; later calls return the same future.
+     */
+    public CompletableFuture<Void> prewarm() {
+        if (prewarm == null) {
+            synchronized (this) {
+                if (prewarm == null) {
+                    prewarm = CompletableFuture.runAsync(() -> {
+                        credentials().resolveCredentials();
+                        ecs();
+                        ec2();
+                    }).exceptionally(e -> {
+                        log.warn("Pre-warming AWS clients failed; they will be built on first use", e);
+                        return null;
+                    });
+                }
+            }
+        }
+        return prewarm;
+    }
+
+    // Thread-safe, build-once holder
+    private static final class Lazy<T> {
+        private final Supplier<T> factory;
+        private volatile T value;
+
+        Lazy(Supplier<T> factory) {
+            this.factory = factory;
+        }
+
+        T get() {
+            T result = value;
+            if (result == null) {
+                synchronized (this) {
+                    result = value;
+                    if (result == null) {
+                        value = result = factory.get();
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
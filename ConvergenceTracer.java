@@ -0,0 +1,294 @@
+package com.example.jgroups.ecs;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Traces how long a newly started ECS task takes to become a member of the JGroups view,
+ * keyed by task IP. For every task it records the ECS pullStoppedAt and startedAt times and
+ * when this node first discovered, pinged and saw it in a view, and keeps a latency histogram
+ * per stage. Tasks that were already running when the tracer was created (or that were in
+ * the first discovery round, if ECS did not tell their start time) are not traced, so the
+ * numbers only reflect scale-out.
+ */
+public class ConvergenceTracer {
+
+    public static final String PULL_TO_START = "pull-to-start";
+    public static final String START_TO_DISCOVERED = "start-to-discovered";
+    public static final String DISCOVERED_TO_PINGED = "discovered-to-pinged";
+    public static final String PINGED_TO_VIEW = "pinged-to-view";
+    public static final String DISCOVERED_TO_VIEW = "discovered-to-view";
+    public static final String START_TO_VIEW = "start-to-view";
+
+    private static final List<String> STAGES = Arrays.asList(PULL_TO_START, START_TO_DISCOVERED,
+            DISCOVERED_TO_PINGED, PINGED_TO_VIEW, DISCOVERED_TO_VIEW, START_TO_VIEW);
+    private static final long MAX_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final long createdAt = System.currentTimeMillis();
+    private final int recentLimit;
+    private final Map<String, Timeline> timelines = new ConcurrentHashMap<>();  // Task IP -> timeline, until the task goes away
+    private final Deque<Timeline> recent = new ArrayDeque<>();  // Last converged tasks, for the report
+    private final Map<String, Histogram> stages = new LinkedHashMap<>();
+    private volatile int pending;  // Traced tasks not yet in a view
+    private volatile boolean primed;  // The first discovery round has been seen
+
+    public ConvergenceTracer() {
+        this(64);
+    }
+
+    public ConvergenceTracer(int recentLimit) {
+        this.recentLimit = recentLimit;
+        for (String stage : STAGES) {
+            stages.put(stage, new ConcurrentHistogram(MAX_MILLIS, 2));
+        }
+    }
+
+    public static final class Timeline {
+        private final String ip;
+        private final String taskArn;
+        private final long pullStoppedAt;
+        private final long startedAt;
+        private final long discoveredAt;
+        private volatile long pingedAt;
+        private volatile long inViewAt;
+        private boolean removed;  // Guarded by the timeline; a removed task can no longer converge
+
+        Timeline(String ip, Task task, long discoveredAt) {
+            this.ip = ip;
+            this.taskArn = task != null ? task.taskArn() : null;
+            this.pullStoppedAt = task != null ? millis(task.pullStoppedAt()) : 0;
+            this.startedAt = task != null ? millis(task.startedAt()) : 0;
+            this.discoveredAt = discoveredAt;
+        }
+
+        private static long millis(Instant instant) {
+            return instant != null ? instant.toEpochMilli() : 0;
+        }
+
+        public String getIp() {
+            return ip;
+        }
+
+        public String getTaskArn() {
+            return taskArn;
+        }
+
+        // Epoch millis; 0 when unknown or not reached yet
+        public long getPullStoppedAt() {
+            return pullStoppedAt;
+        }
+
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        public long getDiscoveredAt() {
+            return discoveredAt;
+        }
+
+        public long getPingedAt() {
+            return pingedAt;
+        }
+
+        public long getInViewAt() {
+            return inViewAt;
+        }
+
+        // Offsets from startedAt (or discovery, if ECS did not report a start time)
+        @Override
+        public String toString() {
+            long origin = startedAt != 0 ? startedAt : discoveredAt;
+            StringBuilder sb = new StringBuilder(ip);
+            if (taskArn != null) {
+                sb.append(" (").append(taskArn.substring(taskArn.lastIndexOf('/') + 1)).append(')');
+            }
+            sb.append(':');
+            append(sb, "pullStopped", pullStoppedAt, origin);
+            append(sb, "started", startedAt, origin);
+            append(sb, "discovered", discoveredAt, origin);
+            append(sb, "pinged", pingedAt, origin);
+            append(sb, "view", inViewAt, origin);
+            return sb.toString();
+        }
+
+        private static void append(StringBuilder sb, String name, long at, long origin) {
+            if (at != 0) {
+                sb.append(String.format(" %s %+.3fs", name, (at - origin) / 1000.0));
+            }
+        }
+    }
+
+    /**
+     * Records the first discovery of the given task IPs. {@code tasks} are the described tasks
+     * the IPs were taken from, if available; they supply the ECS start times.
+     */
+    public void discovered(Collection<String> ips, Collection<Task> tasks) {
+        if (ips.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Map<String, Task> byIp = new HashMap<>();
+        for (Task task : tasks) {
+            String ip = ECSTaskDiscoveryEngine.privateIp(task);
+            if (ip != null && ips.contains(ip)) {
+                byIp.put(ip, task);
+            }
+        }
+        for (String ip : ips) {
+            Task task = byIp.get(ip);
+            if (timelines.containsKey(ip) || !isNew(task)) {
+                continue;
+            }
+            Timeline timeline = new Timeline(ip, task, now);
+            if (timelines.putIfAbsent(ip, timeline) == null) {
+                synchronized (this) {
+                    pending++;
+                }
+                record(PULL_TO_START, timeline.pullStoppedAt, timeline.startedAt);
+                record(START_TO_DISCOVERED, timeline.startedAt, now);
+            }
+        }
+        primed = true;
+    }
+
+    private boolean isNew(Task task) {
+        if (task != null && task.startedAt() != null) {
+            return task.startedAt().toEpochMilli() >= createdAt;
+        }
+        return primed;
+    }
+
+    // Only the first ping of a traced task that is not in the view yet counts
+    public void pinged(String ip) {
+        Timeline timeline = timelines.get(ip);
+        if (timeline != null && timeline.pingedAt == 0 && timeline.inViewAt == 0) {
+            synchronized (timeline) {
+                if (timeline.pingedAt == 0) {
+                    timeline.pingedAt = System.currentTimeMillis();
+                    record(DISCOVERED_TO_PINGED, timeline.discoveredAt, timeline.pingedAt);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the traced tasks among the members of a newly accepted view as converged.
+     */
+    public void viewAccepted(Collection<String> memberIps) {
+        if (pending == 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (String ip : memberIps) {
+            Timeline timeline = timelines.get(ip);
+            if (timeline == null || timeline.inViewAt != 0) {
+                continue;
+            }
+            synchronized (timeline) {
+                if (timeline.inViewAt != 0 || timeline.removed) {
+                    continue;
+                }
+                timeline.inViewAt = now;
+            }
+            record(PINGED_TO_VIEW, timeline.pingedAt, now);
+            record(DISCOVERED_TO_VIEW, timeline.discoveredAt, now);
+            record(START_TO_VIEW, timeline.startedAt, now);
+            synchronized (this) {
+                pending--;
+                recent.addLast(timeline);
+                if (recent.size() > recentLimit) {
+                    recent.removeFirst();
+                }
+            }
+        }
+    }
+
+    // Tasks that left discovery; their IP may be reused by a later task
+    public void removed(Collection<String> ips) {
+        for (String ip : ips) {
+            Timeline timeline = timelines.remove(ip);
+            if (timeline == null) {
+                continue;
+            }
+            // Decided under the timeline's lock, as in viewAccepted, so only one of them counts the task
+            boolean converging;
+            synchronized (timeline) {
+                timeline.removed = true;
+                converging = timeline.inViewAt == 0;
+            }
+            if (converging) {
+                synchronized (this) {
+                    pending--;
+                }
+            }
+        }
+    }
+
+    public boolean hasPending() {
+        return pending > 0;
+    }
+
+    private void record(String stage, long from, long to) {
+        if (from != 0 && to != 0) {
+            stages.get(stage).recordValue(Math.max(0, Math.min(to - from, MAX_MILLIS)));
+        }
+    }
+
+    public Histogram getStage(String stage) {
+        return stages.get(stage);
+    }
+
+    public List<String> getStageNames() {
+        return STAGES;
+    }
+
+    public long getPercentileMillis(String stage, double percentile) {
+        return stages.get(stage).getValueAtPercentile(percentile);
+    }
+
+    public synchronized List<Timeline> getRecent() {
+        return new ArrayList<>(recent);
+    }
+
+    // Traced tasks still waiting to show up in a view
+    public List<Timeline> getPending() {
+        List<Timeline> result = new ArrayList<>();
+        for (Timeline timeline : timelines.values()) {
+            if (timeline.inViewAt == 0) {
+                result.add(timeline);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Per-stage count and p50/p90/p99/max in ms, followed by the timelines of the tasks still
+     * converging and of the last converged ones.
+     */
+    public String print() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Histogram> entry : stages.entrySet()) {
+            Histogram h = entry.getValue();
+            sb.append(String.format("%-21s n=%d p50=%dms p90=%dms p99=%dms max=%dms%n", entry.getKey(),
+                    h.getTotalCount(), h.getValueAtPercentile(50), h.getValueAtPercentile(90),
+                    h.getValueAtPercentile(99), h.getMaxValue()));
+        }
+        List<Timeline> converging = getPending();
+        if (!converging.isEmpty()) {
+            sb.append("converging:\n");
+            converging.forEach(t -> sb.append("  ").append(t).append('\n'));
+        }
+        List<Timeline> converged = getRecent();
+        if (!converged.isEmpty()) {
+            sb.append("converged:\n");
+            converged.forEach(t -> sb.append("  ").append(t).append('\n'));
+        }
+        return sb.toString();
+    }
+}
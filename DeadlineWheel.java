@@ -0,0 +1,106 @@
+package com.example.jgroups.ecs;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel holding at most one deadline per key. Scheduling and cancelling are O(1),
+ * and each tick only visits the bucket it lands on, so expiring deadlines costs O(expired)
+ * rather than a scan over every key. Deadlines further out than one revolution stay in their
+ * bucket until the wheel has gone round enough times.
+ */
+public class DeadlineWheel<K> {
+
+    private static final class Deadline<K> {
+        final K key;
+        final long tick;
+        volatile boolean cancelled;
+
+        Deadline(K key, long tick) {
+            this.key = key;
+            this.tick = tick;
+        }
+    }
+
+    private final long tickMillis;
+    private final int mask;
+    private final List<Queue<Deadline<K>>> buckets;
+    private final Map<K, Deadline<K>> deadlines = new ConcurrentHashMap<>();
+    private volatile long currentTick;
+
+    public DeadlineWheel(long tickMillis, int wheelSize) {
+        int size = Integer.highestOneBit(Math.max(2, wheelSize - 1)) << 1;  // Round up to a power of two
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ConcurrentLinkedQueue<>());
+        }
+        this.currentTick = System.currentTimeMillis() / tickMillis;
+    }
+
+    /**
+     * Sets a deadline for the key unless one is already pending. Returns true if a new one was set.
+     */
+    public boolean scheduleIfAbsent(K key, long delayMillis) {
+        long tick = Math.max(currentTick + 1, (System.currentTimeMillis() + delayMillis + tickMillis - 1) / tickMillis);
+        Deadline<K> deadline = new Deadline<>(key, tick);
+        if (deadlines.putIfAbsent(key, deadline) != null) {
+            return false;
+        }
+        buckets.get((int) (tick & mask)).add(deadline);
+        return true;
+    }
+
+    /**
+     * Replaces any pending deadline for the key with a new one.
+     */
+    public void reschedule(K key, long delayMillis) {
+        cancel(key);
+        scheduleIfAbsent(key, delayMillis);
+    }
+
+    public void cancel(K key) {
+        Deadline<K> deadline = deadlines.remove(key);
+        if (deadline != null) {
+            deadline.cancelled = true;  // Unlinked lazily when its bucket comes round
+        }
+    }
+
+    public boolean isPending(K key) {
+        return deadlines.containsKey(key);
+    }
+
+    public int size() {
+        return deadlines.size();
+    }
+
+    /**
+     * Moves the wheel up to the given time, handing every expired key to the callback.
+     * Must be called from a single thread.
+     */
+    public void advance(long nowMillis, Consumer<K> onExpired) {
+        long target = nowMillis / tickMillis;
+        for (long tick = currentTick + 1; tick <= target; tick++) {
+            Iterator<Deadline<K>> it = buckets.get((int) (tick & mask)).iterator();
+            while (it.hasNext()) {
+                Deadline<K> deadline = it.next();
+                if (deadline.cancelled) {
+                    it.remove();
+                } else if (deadline.tick <= tick) {
+                    it.remove();
+                    if (deadlines.remove(deadline.key, deadline)) {
+                        onExpired.accept(deadline.key);
+                    }
+                }
+            }
+            currentTick = tick;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.jgroups.ecs;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The addresses that joined and left between two discovery rounds.
+ */
+public class DiscoveryDelta {
+
+    public static final DiscoveryDelta EMPTY = new DiscoveryDelta(Collections.emptySet(), Collections.emptySet());
+
+    private final Set<String> added;
+    private final Set<String> removed;
+
+    public DiscoveryDelta(Set<String> added, Set<String> removed) {
+        this.added = Collections.unmodifiableSet(added);
+        this.removed = Collections.unmodifiableSet(removed);
+    }
+
+    public static DiscoveryDelta between(Set<String> before, Set<String> after) {
+        Set<String> added = new HashSet<>(after);
+        added.removeAll(before);
+        Set<String> removed = new HashSet<>(before);
+        removed.removeAll(after);
+        return added.isEmpty() && removed.isEmpty() ? EMPTY : new DiscoveryDelta(added, removed);
+    }
+
+    public Set<String> getAdded() {
+        return added;
+    }
+
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "+" + added + " -" + removed;
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.jgroups.ecs;
+
+/**
+ * Receives the changes to a discovered member set as they happen, instead of a full list to
+ * diff. Events arrive in order, one at a time, with a generation that grows by one per event;
+ * a listener that subscribes late first gets the current members as one "added" event.
+ * Listeners run on the thread that found the change, so they should be quick.
+ */
+@FunctionalInterface
+public interface DiscoveryListener {
+
+    void membersChanged(long generation, DiscoveryDelta delta);
+
+    interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.jgroups.ecs;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide latency and call statistics of the AWS API stages discovery goes through.
+ * Every call is counted, timed into an HdrHistogram and classified as throttled or failed;
+ * the protocols expose these over JMX and {@link MicrometerDiscoveryMetrics} as meters.
+ */
+public final class DiscoveryMetrics {
+
+    public static final String LIST_TASKS = "ListTasks";
+    public static final String DESCRIBE_TASKS = "DescribeTasks";
+    public static final String DESCRIBE_NETWORK_INTERFACES = "DescribeNetworkInterfaces";
+    public static final String LIST_TAGS = "ListTagsForResource";
+    public static final String REFRESH = "Refresh";  // A whole snapshot refresh (ListTasks pages plus DescribeTasks)
+    public static final String CLIENT = "Client";  // Failures discovery clients hit outside an AWS call, e.g. an unusable task IP
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(5);
+    private static final DiscoveryMetrics shared = new DiscoveryMetrics();
+
+    private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+
+    public static DiscoveryMetrics shared() {
+        return shared;
+    }
+
+    public static final class Stage {
+        private final Histogram latencyMicros = new ConcurrentHistogram(MAX_LATENCY_MICROS, 2);
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder throttled = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+
+        void record(long nanos, Throwable error) {
+            calls.increment();
+            latencyMicros.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), MAX_LATENCY_MICROS));
+            if (error != null) {
+                if (AdaptiveRefreshScheduler.isThrottling(error)) {
+                    throttled.increment();
+                } else {
+                    failed.increment();
+                }
+            }
+        }
+
+        void fail(Throwable error) {
+            if (AdaptiveRefreshScheduler.isThrottling(error)) {
+                throttled.increment();
+            } else {
+                failed.increment();
+            }
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getThrottled() {
+            return throttled.sum();
+        }
+
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        public double getLatencyMillis(double percentile) {
+            return latencyMicros.getValueAtPercentile(percentile) / 1000.0;
+        }
+
+        public Histogram getLatencyMicros() {
+            return latencyMicros;
+        }
+    }
+
+    public Stage stage(String name) {
+        return stages.computeIfAbsent(name, n -> new Stage());
+    }
+
+    public Map<String, Stage> getStages() {
+        return new TreeMap<>(stages);
+    }
+
+    public <T> T record(String stage, Supplier<T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            stage(stage).record(System.nanoTime() - start, null);
+            return result;
+        } catch (RuntimeException e) {
+            stage(stage).record(System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    // Counts a failure that has no call to time, such as an error surfaced to a discovery client
+    public void recordFailure(String stage, Throwable error) {
+        stage(stage).fail(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+    }
+
+    public <T> CompletableFuture<T> recordAsync(String stage, Supplier<CompletableFuture<T>> call) {
+        long start = System.nanoTime();
+        return call.get().whenComplete((result, error) -> stage(stage).record(System.nanoTime() - start,
+                error instanceof CompletionException && error.getCause() != null ? error.getCause() : error));
+    }
+
+    // AWS API calls only; refreshes are made of them and would be counted twice, client failures are not calls
+    public long getCalls() {
+        return stages.entrySet().stream().filter(e -> isApiCall(e.getKey())).mapToLong(e -> e.getValue().getCalls()).sum();
+    }
+
+    public long getThrottled() {
+        return stages.entrySet().stream().filter(e -> isApiCall(e.getKey())).mapToLong(e -> e.getValue().getThrottled()).sum();
+    }
+
+    private static boolean isApiCall(String stage) {
+        return !REFRESH.equals(stage) && !CLIENT.equals(stage);
+    }
+
+    /**
+     * One line per stage: calls, throttled, failed and p50/p99/max latency in ms.
+     */
+    public String print() {
+        StringBuilder sb = new StringBuilder();
+        getStages().forEach((name, stage) -> sb.append(String.format(
+                "%-26s calls=%d throttled=%d failed=%d p50=%.1fms p99=%.1fms max=%.1fms%n", name,
+                stage.getCalls(), stage.getThrottled(), stage.getFailed(), stage.getLatencyMillis(50),
+                stage.getLatencyMillis(99), stage.latencyMicros.getMaxValue() / 1000.0)));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.jgroups.ecs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Delivers the deltas of one member set to its {@link DiscoveryListener}s, numbering them with
+ * a generation and keeping the current members so late subscribers can catch up.
+ */
+public class DiscoveryPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(DiscoveryPublisher.class);
+
+    private final List<DiscoveryListener> listeners = new CopyOnWriteArrayList<>();
+    private final Set<String> members = new HashSet<>();
+    private long generation;
+
+    public synchronized DiscoveryListener.Subscription subscribe(DiscoveryListener listener) {
+        listeners.add(listener);
+        if (!members.isEmpty()) {
+            deliver(listener, generation, new DiscoveryDelta(new HashSet<>(members), Collections.emptySet()));
+        }
+        return () -> listeners.remove(listener);
+    }
+
+    /**
+     * Publishes a delta to every listener. Empty deltas are dropped and do not use a generation.
+     */
+    public synchronized void publish(DiscoveryDelta delta) {
+        if (delta.isEmpty()) {
+            return;
+        }
+        members.removeAll(delta.getRemoved());
+        members.addAll(delta.getAdded());
+        generation++;
+        for (DiscoveryListener listener : listeners) {
+            deliver(listener, generation, delta);
+        }
+    }
+
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    public synchronized Set<String> getMembers() {
+        return new HashSet<>(members);
+    }
+
+    private static void deliver(DiscoveryListener listener, long generation, DiscoveryDelta delta) {
+        try {
+            listener.membersChanged(generation, delta);
+        } catch (RuntimeException e) {
+            log.warn("Discovery listener {} failed on generation {}", listener, generation, e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.jgroups.ecs;
+
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Set;
+
+/**
+ * Resolves the task IPs an ECS service publishes through Cloud Map (Route 53), using the JNDI
+ * DNS provider so every lookup goes to the server instead of the JVM's InetAddress cache.
+ * Names starting with '_' (e.g. {@code _infinispan._tcp.my-namespace.local}) are queried as
+ * SRV records whose targets are resolved to A records; any other name is queried for A
+ * records directly. SRV ports are ignored: members are pinged on the transport's port, as
+ * with ECS API discovery.
+ */
+public class DnsTaskResolver {
+
+    private final String query;
+    private final String serverUri;
+    private final long timeoutMillis;
+
+    /**
+     * @param serverUri {@code dns://host:port} of the server to ask (e.g. the tests' DnsStubServer),
+     *                  or null for the system resolvers
+     */
+    public DnsTaskResolver(String query, String serverUri, long timeoutMillis) {
+        this.query = query;
+        this.serverUri = serverUri;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * Returns the published IPs; empty if the name does not exist (no registered instances).
+     *
+     * @throws IllegalStateException if the server could not be asked or answered with an error
+     */
+    public Set<String> resolve() {
+        DirContext context = null;
+        try {
+            context = new InitialDirContext(environment());
+            return query.startsWith("_") ? resolveSrv(context) : lookupA(context, query);
+        } catch (NameNotFoundException e) {
+            return new HashSet<>();
+        } catch (NamingException e) {
+            throw new IllegalStateException("DNS lookup of " + query + " failed: " + e.getMessage(), e);
+        } finally {
+            if (context != null) {
+                try {
+                    context.close();
+                } catch (NamingException ignored) {
+                }
+            }
+        }
+    }
+
+    private Hashtable<String, String> environment() {
+        Hashtable<String, String> env = new Hashtable<>();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
+        env.put(Context.PROVIDER_URL, serverUri != null ? serverUri : "dns:");
+        env.put("com.sun.jndi.dns.timeout.initial", String.valueOf(timeoutMillis));
+        env.put("com.sun.jndi.dns.timeout.retries", "1");
+        return env;
+    }
+
+    // SRV data is "priority weight port target."
+    private Set<String> resolveSrv(DirContext context) throws NamingException {
+        Set<String> ips = new HashSet<>();
+        for (String record : records(context, query, "SRV")) {
+            String[] fields = record.trim().split("\\s+");
+            if (fields.length == 4) {
+                String target = fields[3];
+                try {
+                    ips.addAll(lookupA(context, target));
+                } catch (NameNotFoundException e) {
+                    // Deregistered between the SRV and the A lookup
+                }
+            }
+        }
+        return ips;
+    }
+
+    private static Set<String> lookupA(DirContext context, String name) throws NamingException {
+        return records(context, name, "A");
+    }
+
+    private static Set<String> records(DirContext context, String name, String type) throws NamingException {
+        Set<String> values = new HashSet<>();
+        Attributes attributes = context.getAttributes(name, new String[]{type});
+        Attribute attribute = attributes.get(type);
+        if (attribute != null) {
+            NamingEnumeration<?> all = attribute.getAll();
+            while (all.hasMore()) {
+                values.add(String.valueOf(all.next()));
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.jgroups.ecs;
+
+import software.amazon.awssdk.services.ecs.EcsAsyncClient;
+import software.amazon.awssdk.services.ecs.model.*;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Non-blocking ListTasks -> DescribeTasks -> DescribeNetworkInterfaces pipeline on the
+ * async SDK clients. Every ListTasks page (100 ARNs, one DescribeTasks batch) is described
+ * as soon as it arrives, while the next page is still being listed, so the batches and
+ * their ENI lookups overlap. No calling thread is blocked.
+ *
+ * Snapshots go through the service's {@link SharedDiscoveryCache} entry, so a fresh snapshot
+ * is reused, a reload is shared with blocking callers, and only ARNs not described before
+ * are described. ENIs are resolved by an {@link EniAddressResolver}, whose cache is shared
+ * with the blocking path.
+ */
+public class ECSAsyncTaskDiscovery {
+
+    private final EcsAsyncClient ecsClient;
+    private final EniAddressResolver eniResolver;
+    private final SharedDiscoveryCache.ServiceTasks serviceTasks;
+    private final DiscoveryMetrics metrics = DiscoveryMetrics.shared();
+    private final String clusterName;
+    private final String serviceName;
+    private final long maxAgeMillis;
+
+    public ECSAsyncTaskDiscovery(EcsAsyncClient ecsClient, EniAddressResolver eniResolver,
+                                 SharedDiscoveryCache.ServiceTasks serviceTasks, String clusterName, String serviceName,
+                                 long maxAgeMillis) {
+        this.ecsClient = ecsClient;
+        this.eniResolver = eniResolver;
+        this.serviceTasks = serviceTasks;
+        this.clusterName = clusterName;
+        this.serviceName = serviceName;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    // The shared snapshot if it is younger than maxAgeMillis, otherwise a reload
+    public CompletableFuture<SharedDiscoveryCache.Snapshot> getSnapshot() {
+        return serviceTasks.getAsync(maxAgeMillis, this::load);
+    }
+
+    public CompletableFuture<List<String>> getTaskPrivateIps() {
+        return getSnapshot()
+                .thenCompose(snapshot -> eniResolver.resolveAsync(new ArrayList<>(snapshot.getTasks().values())))
+                .thenApply(addresses -> new ArrayList<>(new LinkedHashSet<>(addresses.values())));
+    }
+
+    private CompletableFuture<Map<String, Task>> load(Map<String, Task> known) {
+        Map<String, Task> tasks = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> batches = Collections.synchronizedList(new ArrayList<>());
+        return listPage(null, known, tasks, batches)
+                .thenCompose(done -> CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])))
+                .thenApply(done -> tasks);
+    }
+
+    private CompletableFuture<Void> listPage(String nextToken, Map<String, Task> known, Map<String, Task> tasks,
+                                             List<CompletableFuture<Void>> batches) {
+        ListTasksRequest request = ListTasksRequest.builder()
+                .cluster(clusterName)
+                .serviceName(serviceName)
+                .desiredStatus(DesiredStatus.RUNNING)
+                .maxResults(ECSTaskDiscoveryEngine.DESCRIBE_BATCH_SIZE)
+                .nextToken(nextToken)
+                .build();
+        return metrics.recordAsync(DiscoveryMetrics.LIST_TASKS, () -> ecsClient.listTasks(request))
+                .thenCompose(response -> {
+                    List<String> unseen = new ArrayList<>();
+                    for (String arn : response.taskArns()) {
+                        Task task = known.get(arn);
+                        if (task != null && ECSTaskDiscoveryEngine.privateIp(task) != null) {
+                            tasks.put(arn, task);
+                        } else {
+                            unseen.add(arn);
+                        }
+                    }
+                    if (!unseen.isEmpty()) {
+                        batches.add(describe(unseen, tasks));
+                    }
+                    return response.nextToken() == null
+                            ? CompletableFuture.completedFuture(null)
+                            : listPage(response.nextToken(), known, tasks, batches);
+                });
+    }
+
+    private CompletableFuture<Void> describe(List<String> taskArns, Map<String, Task> tasks) {
+        DescribeTasksRequest request = DescribeTasksRequest.builder()
+                .cluster(clusterName)
+                .tasks(taskArns)
+                .build();
+        return metrics.recordAsync(DiscoveryMetrics.DESCRIBE_TASKS, () -> ecsClient.describeTasks(request))
+                .thenAccept(response -> response.tasks().forEach(task -> tasks.put(task.taskArn(), task)));
+    }
+}
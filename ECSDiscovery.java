@@ -0,0 +1,51 @@
+package com.example.jgroups.ecs;
+
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Returns the private IPs of the running tasks of one ECS service, read from the
+ * process-wide {@link SharedDiscoveryCache}.
+ */
+public class ECSDiscovery {
+
+    private final SharedDiscoveryCache.ServiceTasks serviceTasks;
+
+    public ECSDiscovery(String clusterName, String serviceName) {
+        this.serviceTasks = SharedDiscoveryCache.forService(clusterName, serviceName,
+                () -> new ECSTaskDiscoveryEngine(AwsClientRegistry.shared().ecs(), clusterName, serviceName, 4));
+    }
+
+    // Refreshes the shared snapshot if it is older than the cache TTL; changes go to the subscribed listeners
+    public void refresh() {
+        serviceTasks.get();
+    }
+
+    public DiscoveryListener.Subscription subscribe(DiscoveryListener listener) {
+        return serviceTasks.subscribe(listener);
+    }
+
+    // Tasks of the last refresh, without refreshing; empty before the first one
+    public Collection<Task> getKnownTasks() {
+        SharedDiscoveryCache.Snapshot snapshot = serviceTasks.peek();
+        return snapshot != null ? snapshot.getTasks().values() : Collections.emptyList();
+    }
+
+    public List<String> getRunningTaskIPs() {
+        return serviceTasks.get().getTasks().values().stream()
+                .map(ECSTaskDiscoveryEngine::privateIp)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    // Gives back this client's reference to the shared entry
+    public void close() {
+        serviceTasks.release();
+    }
+}
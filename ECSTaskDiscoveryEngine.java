@@ -0,0 +1,147 @@
+package com.example.jgroups.ecs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.services.ecs.model.*;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Discovers the running tasks of one ECS service. ListTasks is followed across all
+ * nextToken pages and the ARNs are described in batches of 100 (the DescribeTasks limit),
+ * with up to {@code concurrency} batches in flight at once.
+ */
+public class ECSTaskDiscoveryEngine implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ECSTaskDiscoveryEngine.class);
+
+    public static final int DESCRIBE_BATCH_SIZE = 100;
+
+    private final EcsClient ecsClient;
+    private final String clusterName;
+    private final String serviceName;
+    private final ExecutorService executor;
+    private final DiscoveryMetrics metrics = DiscoveryMetrics.shared();
+
+    public ECSTaskDiscoveryEngine(EcsClient ecsClient, String clusterName, String serviceName, int concurrency) {
+        this.ecsClient = ecsClient;
+        this.clusterName = clusterName;
+        this.serviceName = serviceName;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, concurrency), r -> {
+            Thread t = new Thread(r, "ECS-DescribeTasks");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public String getClusterName() {
+        return clusterName;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    // Collect the ARNs of all running tasks, following every ListTasks page
+    public List<String> listTaskArns() {
+        List<String> taskArns = new ArrayList<>();
+        String nextToken = null;
+        do {
+            ListTasksRequest request = ListTasksRequest.builder()
+                    .cluster(clusterName)
+                    .serviceName(serviceName)
+                    .desiredStatus(DesiredStatus.RUNNING)
+                    .nextToken(nextToken)
+                    .build();
+            ListTasksResponse response = metrics.record(DiscoveryMetrics.LIST_TASKS, () -> ecsClient.listTasks(request));
+            taskArns.addAll(response.taskArns());
+            nextToken = response.nextToken();
+        } while (nextToken != null);
+        return taskArns;
+    }
+
+    // Describe the given tasks, splitting them into DescribeTasks batches that run in parallel
+    public List<Task> describeTasks(Collection<String> taskArns) {
+        if (taskArns.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> arns = new ArrayList<>(taskArns);
+        if (arns.size() <= DESCRIBE_BATCH_SIZE) {
+            return describeBatch(arns);  // A single batch needs no hop through the executor
+        }
+
+        List<CompletableFuture<List<Task>>> batches = new ArrayList<>();
+        for (int i = 0; i < arns.size(); i += DESCRIBE_BATCH_SIZE) {
+            List<String> batch = arns.subList(i, Math.min(i + DESCRIBE_BATCH_SIZE, arns.size()));
+            batches.add(CompletableFuture.supplyAsync(() -> describeBatch(batch), executor));
+        }
+
+        List<Task> tasks = new ArrayList<>(arns.size());
+        try {
+            for (CompletableFuture<List<Task>> batch : batches) {
+                tasks.addAll(batch.join());
+            }
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        return tasks;
+    }
+
+    public List<Task> describeRunningTasks() {
+        return describeTasks(listTaskArns());
+    }
+
+    public List<String> getTaskIPs() {
+        List<Task> tasks = describeRunningTasks();
+        log.debug("Described {} running tasks of {}/{}", tasks.size(), clusterName, serviceName);
+        return tasks.stream()
+                .map(ECSTaskDiscoveryEngine::privateIp)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    private List<Task> describeBatch(List<String> batch) {
+        DescribeTasksRequest request = DescribeTasksRequest.builder()
+                .cluster(clusterName)
+                .tasks(batch)
+                .build();
+        DescribeTasksResponse response = metrics.record(DiscoveryMetrics.DESCRIBE_TASKS, () -> ecsClient.describeTasks(request));
+        for (Failure failure : response.failures()) {
+            log.warn("DescribeTasks failed for {}: {}", failure.arn(), failure.reason());
+        }
+        return response.tasks();
+    }
+
+    /**
+     * Returns the private IPv4 address of an awsvpc task, taken from its ENI attachment
+     * or, failing that, from its first container. Returns null if the task has none yet.
+     */
+    public static String privateIp(Task task) {
+        for (Attachment attachment : task.attachments()) {
+            for (KeyValuePair detail : attachment.details()) {
+                if ("privateIPv4Address".equals(detail.name()) && detail.value() != null) {
+                    return detail.value();
+                }
+            }
+        }
+        for (Container container : task.containers()) {
+            if (!container.networkInterfaces().isEmpty()) {
+                return container.networkInterfaces().get(0).privateIpv4Address();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
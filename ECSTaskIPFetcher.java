@@ -1,65 +1,82 @@
-import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
-import software.amazon.awssdk.regions.Region;
+import com.example.jgroups.ecs.AwsClientRegistry;
+import com.example.jgroups.ecs.ECSAsyncTaskDiscovery;
+import com.example.jgroups.ecs.DiscoveryListener;
+import com.example.jgroups.ecs.ECSTaskDiscoveryEngine;
+import com.example.jgroups.ecs.EniAddressResolver;
+import com.example.jgroups.ecs.IncrementalTaskDiscovery;
+import com.example.jgroups.ecs.SharedDiscoveryCache;
 import software.amazon.awssdk.services.ecs.EcsClient;
-import software.amazon.awssdk.services.ecs.model.*;
 import software.amazon.awssdk.services.ec2.Ec2Client;
-import software.amazon.awssdk.services.ec2.model.*;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ECSTaskIPFetcher {
     private final EcsClient ecsClient;
     private final Ec2Client ec2Client;
     private final String clusterName;
     private final String serviceName;
+    private final EniAddressResolver eniResolver;
+    private final SharedDiscoveryCache.ServiceTasks serviceTasks;
+    private final IncrementalTaskDiscovery taskDiscovery;
+    private ECSAsyncTaskDiscovery asyncDiscovery;
+    // Applies reloaded snapshots, so neither the caller nor the common pool runs discovery work
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ECSTaskIPFetcher-Refresh");
+        t.setDaemon(true);
+        return t;
+    });
 
     public ECSTaskIPFetcher(String clusterName, String serviceName) {
-        this.ecsClient = EcsClient.builder()
-                .region(Region.US_EAST_1)
-                .credentialsProvider(DefaultCredentialsProvider.create())
-                .build();
-
-        this.ec2Client = Ec2Client.builder()
-                .region(Region.US_EAST_1)
-                .credentialsProvider(DefaultCredentialsProvider.create())
-                .build();
+        // Shared with every other discovery client in this JVM
+        this.ecsClient = AwsClientRegistry.shared().ecs();
+        this.ec2Client = AwsClientRegistry.shared().ec2();
 
         this.clusterName = clusterName;
         this.serviceName = serviceName;
+        this.eniResolver = new EniAddressResolver(ec2Client, AwsClientRegistry.shared()::ec2Async);
+        this.serviceTasks = SharedDiscoveryCache.forService(clusterName, serviceName,
+                () -> new ECSTaskDiscoveryEngine(ecsClient, clusterName, serviceName, 4));
+        this.taskDiscovery = new IncrementalTaskDiscovery(serviceTasks, eniResolver, SharedDiscoveryCache.DEFAULT_TTL_MILLIS);
     }
 
     public List<String> getTaskPrivateIps() {
-        // Fetch running task ARNs
-        List<String> taskArns = ecsClient.listTasks(ListTasksRequest.builder()
-                .cluster(clusterName)
-                .serviceName(serviceName)
-                .desiredStatus("RUNNING")
-                .build()).taskArns();
+        // Only tasks that were not running on the previous call are described
+        taskDiscovery.refresh();
+        return new ArrayList<>(taskDiscovery.addresses());
+    }
 
-        if (taskArns.isEmpty()) return List.of();
+    /**
+     * Reloads the running tasks on the async clients, then applies the snapshot on this
+     * fetcher's own thread; what changed is delivered to the subscribed listeners.
+     */
+    public CompletableFuture<Void> refreshAsync() {
+        return asyncDiscovery().getSnapshot().thenRunAsync(taskDiscovery::refresh, refreshExecutor);
+    }
 
-        // Describe task details
-        List<Task> tasks = ecsClient.describeTasks(DescribeTasksRequest.builder()
-                .cluster(clusterName)
-                .tasks(taskArns)
-                .build()).tasks();
+    public DiscoveryListener.Subscription subscribe(DiscoveryListener listener) {
+        return taskDiscovery.subscribe(listener);
+    }
 
-        // Extract network interface IDs
-        List<String> eniIds = tasks.stream()
-                .flatMap(task -> task.attachments().stream())
-                .flatMap(attachment -> attachment.details().stream())
-                .filter(detail -> detail.name().equals("networkInterfaceId"))
-                .map(KeyValuePair::value)
-                .collect(Collectors.toList());
+    // Non-blocking variant for callers that must not hold their thread during the ECS/EC2 round trips
+    public CompletableFuture<List<String>> getTaskPrivateIpsAsync() {
+        return asyncDiscovery().getTaskPrivateIps();
+    }
+
+    private synchronized ECSAsyncTaskDiscovery asyncDiscovery() {
+        if (asyncDiscovery == null) {
+            asyncDiscovery = new ECSAsyncTaskDiscovery(AwsClientRegistry.shared().ecsAsync(), eniResolver, serviceTasks,
+                    clusterName, serviceName, SharedDiscoveryCache.DEFAULT_TTL_MILLIS);
+        }
+        return asyncDiscovery;
+    }
 
-        // Get private IPs from ENIs
-        return ec2Client.describeNetworkInterfaces(DescribeNetworkInterfacesRequest.builder()
-                        .networkInterfaceIds(eniIds)
-                        .build())
-                .networkInterfaces()
-                .stream()
-                .map(NetworkInterface::privateIpAddress)
-                .collect(Collectors.toList());
+    // Gives back the shared entry and stops the refresh thread
+    public void close() {
+        serviceTasks.release();
+        refreshExecutor.shutdownNow();
     }
 }
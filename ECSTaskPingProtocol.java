@@ -1,83 +1,230 @@
 import org.jgroups.*;
-import com.amazonaws.services.ecs.*;
-import com.amazonaws.services.ecs.model.*;
+import org.jgroups.conf.ClassConfigurator;
+import org.jgroups.stack.IpAddress;
+import org.jgroups.annotations.ManagedAttribute;
+import org.jgroups.annotations.ManagedOperation;
+import org.jgroups.annotations.Property;
+import com.example.jgroups.ecs.AwsClientRegistry;
+import com.example.jgroups.ecs.DeadlineWheel;
+import com.example.jgroups.ecs.DiscoveryMetrics;
+import com.example.jgroups.ecs.ECSTaskDiscoveryEngine;
+import com.example.jgroups.ecs.MicrometerDiscoveryMetrics;
+import com.example.jgroups.ecs.PhiAccrualDetector;
+import com.example.jgroups.ecs.SharedDiscoveryCache;
+import com.example.jgroups.ecs.SwimMembership;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import software.amazon.awssdk.services.ecs.model.Task;
 
 public class ECSTaskPingProtocol extends Protocol {
 
-    private AmazonECS ecsClient;
+    static {
+        ClassConfigurator.add(Ping.MAGIC_ID, Ping.class);
+    }
+
     private String clusterName;
     private String serviceName; // New field to specify the ECS service
     private Set<String> knownNodes;  // A set of ECS task IPs or hostnames
     private Map<String, Long> pingTimestamps;  // To track ping responses (last successful ping timestamp)
     private long pingTimeoutMillis = 5000;  // Timeout for ping response in milliseconds
+    private long timeoutTickMillis = 100;  // Resolution of ping timeout detection
+    private DeadlineWheel<String> pingDeadlines;  // Outstanding pings, one deadline per node
+    private ScheduledExecutorService timeoutTicker;
+    private ScheduledFuture<?> probeRounds;
+
+    @Property(description = "Protocol period in ms: time between probe rounds (every known node in 'all' mode, swimProbeTargets peers in 'swim' mode)")
+    private long protocolPeriodMillis = 1000;
+
+    @Property(description = "How nodes are suspected: 'timeout' (no answer within pingTimeoutMillis) or 'phi' (phi-accrual)")
+    private String suspicionMode = "timeout";
+
+    @Property(description = "Phi value above which a node is suspected in phi mode (8 ~ one false suspicion in 10^8)")
+    private double phiThreshold = 8.0;
+
+    @Property(description = "Number of heartbeat intervals and RTTs kept per node for phi and RTT percentiles")
+    private int phiWindowSize = 200;
+
+    @Property(description = "Lower bound in ms for the standard deviation of heartbeat intervals, so very regular nodes do not flap")
+    private double phiMinStdDevMillis = 100;
+
+    @Property(description = "Pause in ms (e.g. GC) added to the expected heartbeat interval before phi starts rising")
+    private long acceptablePauseMillis = 500;
+
+    @Property(description = "How nodes are probed: 'all' (every known node each round) or 'swim' (k random peers, indirect probes on timeout)")
+    private String probeMode = "all";
+
+    @Property(description = "SWIM: number of peers probed directly per round")
+    private int swimProbeTargets = 1;
+
+    @Property(description = "SWIM: number of helpers asked to probe a peer that did not answer a direct probe")
+    private int swimIndirectProbes = 3;
+
+    @Property(description = "SWIM: time in ms to wait for an ack to a direct, and then to the indirect, probes")
+    private long swimProbeTimeoutMillis = 500;
+
+    @Property(description = "SWIM: time in ms a peer stays suspected, and can refute it, before it is declared dead")
+    private long swimSuspicionTimeoutMillis = 3000;
+
+    @Property(description = "SWIM: maximum number of membership updates piggybacked on each probe")
+    private int swimPiggybackMax = 6;
+
+    @Property(description = "SWIM: each membership update is retransmitted this many times log2(n)")
+    private int swimRetransmitMultiplier = 3;
+
+    @Property(description = "Port pings are sent to on each node")
+    private int pingPort = 7800;
+
+    private volatile SwimMembership swim;  // SWIM mode, created once the local address is known
+    private volatile String localNode;  // IP of the transport's physical address, as peers discover it
+    private volatile Address localAddress;
+    private final Map<String, PhysicalAddress> peerAddresses = new ConcurrentHashMap<>();
+    private SharedDiscoveryCache.ServiceTasks serviceTasks;  // Taken in init, given back in destroy
+    private final AtomicLong probeSeqs = new AtomicLong();
+    private final Set<String> indirectProbes = ConcurrentHashMap.newKeySet();  // Peers whose indirect probe is outstanding
+    private final Map<Long, String> relayedProbes = new ConcurrentHashMap<>();  // Seq of a probe sent for another node -> requester
+    private DeadlineWheel<Long> relayDeadlines;  // Drops relayed probes whose target never acks
+    private DeadlineWheel<String> swimSuspects;
+
+    private PhiAccrualDetector phiDetector;
+    private DeadlineWheel<String> suspicionDeadlines;  // Phi mode: when each node's phi will cross the threshold
+
+    private static final long MAX_RTT_MILLIS = 60000;
+    private final Histogram rttMillis = new ConcurrentHistogram(MAX_RTT_MILLIS, 2);  // All nodes, directly acked probes only
+    private final LongAdder pingsSent = new LongAdder();
+    private final LongAdder acks = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();  // Probes not answered within their deadline
+    private final LongAdder suspicions = new LongAdder();  // Nodes suspected by timeout, phi or SWIM
 
     public ECSTaskPingProtocol(String clusterName, String serviceName) {
-        this.ecsClient = AmazonECSClient.builder().build();  // Initialize AWS ECS client
         this.clusterName = clusterName;
         this.serviceName = serviceName;  // Set the service name to filter by
-        this.knownNodes = new HashSet<>();
-        this.pingTimestamps = new HashMap<>();
+        // Touched from the send, receive and timeout threads
+        this.knownNodes = ConcurrentHashMap.newKeySet();
+        this.pingTimestamps = new ConcurrentHashMap<>();
+        this.pingDeadlines = new DeadlineWheel<>(timeoutTickMillis, 512);
     }
 
     @Override
     public void init() throws Exception {
         super.init();
+        phiDetector = new PhiAccrualDetector(phiWindowSize, phiMinStdDevMillis, acceptablePauseMillis);
+        suspicionDeadlines = new DeadlineWheel<>(timeoutTickMillis, 512);
+        if (isSwimMode()) {
+            swimSuspects = new DeadlineWheel<>(timeoutTickMillis, 512);
+            relayDeadlines = new DeadlineWheel<>(timeoutTickMillis, 512);
+        }
         discoverTasks();  // Discover tasks when protocol is initialized
+        bindMeters();
+    }
+
+    private void bindMeters() {
+        MicrometerDiscoveryMetrics.bindShared();
+        String[] tags = {"cluster", clusterName, "service", serviceName};
+        MicrometerDiscoveryMetrics.histogram("jgroups.ecs.ping.rtt.ms", "Ping round-trip time", rttMillis, 1, tags);
+        MicrometerDiscoveryMetrics.counter("jgroups.ecs.ping.sent", "Pings sent", pingsSent, LongAdder::sum, tags);
+        MicrometerDiscoveryMetrics.counter("jgroups.ecs.ping.acks", "Ping acks received", acks, LongAdder::sum, tags);
+        MicrometerDiscoveryMetrics.counter("jgroups.ecs.ping.timeouts", "Pings not answered in time", timeouts, LongAdder::sum, tags);
+        MicrometerDiscoveryMetrics.counter("jgroups.ecs.ping.suspicions", "Nodes suspected", suspicions, LongAdder::sum, tags);
+        MicrometerDiscoveryMetrics.gauge("jgroups.ecs.ping.nodes", "Known nodes", knownNodes, Set::size, tags);
     }
 
     @Override
     public void start() throws Exception {
         super.start();
         // Optional: Periodically refresh the task list
+
+        // Advance the timeout wheel; each tick only touches the pings expiring in it
+        timeoutTicker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ECSTaskPing-Timeouts");
+            t.setDaemon(true);
+            return t;
+        });
+        timeoutTicker.scheduleAtFixedRate(this::checkForPingTimeouts, timeoutTickMillis, timeoutTickMillis, TimeUnit.MILLISECONDS);
+        probeRounds = timeoutTicker.scheduleAtFixedRate(this::probeRound, protocolPeriodMillis, protocolPeriodMillis, TimeUnit.MILLISECONDS);
     }
 
-    // Discover ECS tasks for a specific service (fetches metadata, e.g., IP addresses)
-    private void discoverTasks() {
+    // One protocol period; a failure must not cancel the schedule
+    private void probeRound() {
         try {
-            // List the running tasks for the specified ECS service in the ECS cluster
-            ListTasksRequest listTasksRequest = new ListTasksRequest()
-                .withCluster(clusterName)
-                .withServiceName(serviceName)  // Filter tasks by service name
-                .withDesiredStatus(TaskDesiredStatus.RUNNING);
+            sendPing();
+        } catch (Throwable t) {
+            log.warn("Probe round failed: " + t);
+        }
+    }
 
-            ListTasksResponse tasksResponse = ecsClient.listTasks(listTasksRequest);
-            List<String> taskArns = tasksResponse.getTaskArns();
+    /**
+     * The local node is identified by the IP of the transport's physical address (the task's ENI
+     * on awsvpc), which is what peers discover through ECS, rather than by the host name.
+     * Returns false until the transport knows its address.
+     */
+    private boolean resolveLocalNode() {
+        if (localNode != null) {
+            return true;
+        }
+        Object physical = down_prot.down(new Event(Event.GET_PHYSICAL_ADDRESS, localAddress));
+        if (!(physical instanceof IpAddress)) {
+            return false;
+        }
+        synchronized (this) {
+            if (localNode == null) {
+                String node = ((IpAddress) physical).getIpAddress().getHostAddress();
+                if (isSwimMode()) {
+                    SwimMembership membership = new SwimMembership(node, swimRetransmitMultiplier);
+                    knownNodes.forEach(membership::addMember);
+                    swim = membership;
+                }
+                localNode = node;
+            }
+        }
+        return true;
+    }
 
-            if (taskArns != null && !taskArns.isEmpty()) {
-                describeTasks(taskArns);  // Describe the filtered tasks
+    // Discover ECS tasks for a specific service (fetches metadata, e.g., IP addresses)
+    private void discoverTasks() {
+        try {
+            // Running tasks of the service, listed across all pages and shared with other discovery clients in this JVM
+            if (serviceTasks == null) {
+                serviceTasks = SharedDiscoveryCache.forService(clusterName, serviceName,
+                        () -> new ECSTaskDiscoveryEngine(AwsClientRegistry.shared().ecs(), clusterName, serviceName, 4));
+            }
+            Collection<Task> tasks = serviceTasks.get().getTasks().values();
+            if (!tasks.isEmpty()) {
+                describeTasks(tasks);
             }
         } catch (Exception e) {
-            System.err.println("Error discovering ECS tasks for service " + serviceName + ": " + e.getMessage());
+            log.warn("Error discovering ECS tasks for service " + serviceName + ": " + e.getMessage());
+            DiscoveryMetrics.shared().recordFailure(DiscoveryMetrics.CLIENT, e);
         }
     }
 
-    // Get ECS task details (including IP addresses) for the filtered tasks
-    private void describeTasks(List<String> taskArns) {
-        try {
-            DescribeTasksRequest describeTasksRequest = new DescribeTasksRequest()
-                .withCluster(clusterName)
-                .withTasks(taskArns);
-
-            DescribeTasksResponse describeResponse = ecsClient.describeTasks(describeTasksRequest);
-            List<Task> tasks = describeResponse.getTasks();
-
-            // Loop over each task and fetch its IP address
-            for (Task task : tasks) {
-                String taskArn = task.getTaskArn();
-                System.out.println("Task ARN: " + taskArn);
-
-                // Check if the task has containers and extract their network interface IPs
-                if (task.getContainers() != null && !task.getContainers().isEmpty()) {
-                    String ip = task.getContainers().get(0)
-                                   .getNetworkInterfaces().get(0)
-                                   .getPrivateIpv4Address();
-                    System.out.println("Task IP: " + ip);
-                    knownNodes.add(ip);  // Add IP to the known nodes list
+    // Record the IP address of each described task
+    private void describeTasks(Collection<Task> tasks) {
+        int withIp = 0;
+        for (Task task : tasks) {
+            String ip = ECSTaskDiscoveryEngine.privateIp(task);
+            if (ip != null) {
+                withIp++;
+                knownNodes.add(ip);  // Add IP to the known nodes list
+                SwimMembership membership = swim;
+                if (membership != null) {
+                    membership.addMember(ip);
                 }
             }
-        } catch (Exception e) {
-            System.err.println("Error describing tasks for service " + serviceName + ": " + e.getMessage());
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Discovered " + tasks.size() + " tasks of service " + serviceName + ", " + withIp + " with an IP");
         }
     }
 
@@ -90,80 +237,620 @@ public class ECSTaskPingProtocol extends Protocol {
     // Handle sending a ping to another node
     @Override
     public void sendPing() throws Exception {
+        if (!resolveLocalNode()) {
+            return;
+        }
+        if (isSwimMode()) {
+            sendSwimProbes();
+            return;
+        }
         for (String node : knownNodes) {
             long currentTime = System.currentTimeMillis();
 
             // Send a ping to each node
-            Ping pingMessage = new Ping(node, currentTime);
-            send(pingMessage);
+            send(Ping.probe(localNode, node, currentTime, 0, Collections.emptyList()));
+            pingsSent.increment();
 
-            // Record the last ping timestamp
+            // Record the last ping timestamp and expect an answer within the timeout
             pingTimestamps.put(node, currentTime);
-            System.out.println("Sent ping to node: " + node);
+            if (!isPhiMode()) {
+                pingDeadlines.scheduleIfAbsent(node, pingTimeoutMillis);
+            }
+            if (log.isTraceEnabled()) {
+                log.trace("Sent ping to node: " + node);
+            }
         }
     }
 
     // Handle receiving a ping (success)
     @Override
     public void receivePing(Ping pingMessage) {
-        String node = pingMessage.getNode();
+        if (!resolveLocalNode()) {
+            return;
+        }
+        if (isSwimMode()) {
+            receiveSwim(pingMessage);
+            return;
+        }
+        if (pingMessage.getType() == Ping.PROBE) {
+            // Acknowledge, echoing the sender's timestamp so it can compute the RTT
+            send(Ping.ack(localNode, pingMessage.getFrom(), pingMessage.getTimestamp(), pingMessage.getSeq(),
+                    Collections.emptyList()));
+            return;
+        }
+
+        String node = pingMessage.getFrom();
         long receivedTime = System.currentTimeMillis();
         long sentTime = pingMessage.getTimestamp();
 
         // If we receive a ping, it means the node is reachable (success)
         long roundTripTime = receivedTime - sentTime;
-        System.out.println("Received ping from node: " + node + " with RTT: " + roundTripTime + "ms");
+        recordAck(roundTripTime);
+        if (log.isTraceEnabled()) {
+            log.trace("Received ping from node: " + node + " with RTT: " + roundTripTime + "ms");
+        }
 
         // Update the ping timestamp for this node to track the success
         pingTimestamps.put(node, receivedTime);
+        pingDeadlines.cancel(node);
+        phiDetector.heartbeat(node, receivedTime, roundTripTime);
+        if (isPhiMode()) {
+            scheduleSuspicion(node);
+        }
+    }
 
-        // Send a response back to acknowledge successful ping
-        send(new Ping(node, receivedTime));  // Send a response back
+    @Override
+    public Object up(Message msg) {
+        Header header = msg.getHeader(this.id);
+        if (!(header instanceof Ping)) {
+            return up_prot.up(msg);
+        }
+        receivePing((Ping) header);
+        return null;
+    }
+
+    private void send(Ping ping) {
+        PhysicalAddress dest = peerAddresses.computeIfAbsent(ping.getTo(), this::toPhysicalAddress);
+        Message msg = new Message(dest).putHeader(this.id, ping);
+        msg.setFlag(Message.Flag.OOB, Message.Flag.INTERNAL, Message.Flag.NO_RELIABILITY);
+        down(msg);
+    }
+
+    private PhysicalAddress toPhysicalAddress(String node) {
+        try {
+            return new IpAddress(node, pingPort);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Invalid node address " + node, e);
+        }
+    }
+
+    private void recordAck(long roundTripTime) {
+        acks.increment();
+        rttMillis.recordValue(Math.max(0, Math.min(roundTripTime, MAX_RTT_MILLIS)));
+    }
+
+    // Timeout mode: an unanswered ping is a suspicion on its own
+    private void onPingTimeout(String node) {
+        timeouts.increment();
+        suspicions.increment();
+        handlePingFailure(node);
     }
 
     // Handle ping failure (timeout or no response)
     @Override
     public void handlePingFailure(String node) {
         // If a ping fails (e.g., no response within the timeout), mark the node as unreachable
-        System.err.println("Ping to node " + node + " failed or timed out.");
+        if (log.isDebugEnabled()) {
+            log.debug("Ping to node " + node + " failed or timed out");
+        }
         knownNodes.remove(node);  // Optionally remove the node from the cluster
+        pingTimestamps.remove(node);
+        peerAddresses.remove(node);
+        pingDeadlines.cancel(node);
+        suspicionDeadlines.cancel(node);
+        phiDetector.remove(node);
+        if (swim != null) {
+            swim.confirmDead(node);  // Gossiped to the rest of the group on the next probes
+            swimSuspects.cancel(node);
+            indirectProbes.remove(node);
+        }
+    }
+
+    private boolean isSwimMode() {
+        return "swim".equalsIgnoreCase(probeMode);
+    }
+
+    // SWIM: probe k peers per round, so per-node load stays constant as the cluster grows
+    private void sendSwimProbes() {
+        for (String target : swim.nextProbeTargets(swimProbeTargets)) {
+            send(Ping.probe(localNode, target, System.currentTimeMillis(), probeSeqs.incrementAndGet(),
+                    swim.piggyback(swimPiggybackMax)));
+            pingsSent.increment();
+            pingDeadlines.scheduleIfAbsent(target, swimProbeTimeoutMillis);
+        }
+    }
+
+    private void receiveSwim(Ping ping) {
+        for (SwimMembership.Update update : ping.getUpdates()) {
+            if (swim.apply(update)) {
+                onSwimUpdate(update);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        switch (ping.getType()) {
+            case Ping.PROBE:
+                if (localNode.equals(ping.getNode())) {
+                    // Probed directly or on behalf of a helper's requester; ack to whoever sent it
+                    send(Ping.ack(localNode, ping.getFrom(), ping.getTimestamp(), ping.getSeq(),
+                            swim.piggyback(swimPiggybackMax)));
+                }
+                break;
+            case Ping.PROBE_REQ:
+                // Probe the target for the requester and relay its ack back
+                long seq = probeSeqs.incrementAndGet();
+                relayedProbes.put(seq, ping.getFrom());
+                relayDeadlines.scheduleIfAbsent(seq, swimProbeTimeoutMillis);
+                send(Ping.probe(localNode, ping.getNode(), ping.getTimestamp(), seq, swim.piggyback(swimPiggybackMax)));
+                break;
+            case Ping.ACK:
+                String requester = relayedProbes.remove(ping.getSeq());
+                if (requester != null) {
+                    relayDeadlines.cancel(ping.getSeq());
+                    send(Ping.ack(ping.getFrom(), requester, ping.getTimestamp(), ping.getSeq(), swim.piggyback(swimPiggybackMax)));
+                    break;
+                }
+                String node = ping.getFrom();
+                recordAck(now - ping.getTimestamp());
+                pingTimestamps.put(node, now);
+                pingDeadlines.cancel(node);
+                indirectProbes.remove(node);
+                swimSuspects.cancel(node);
+                phiDetector.heartbeat(node, now, now - ping.getTimestamp());
+                if (isPhiMode()) {
+                    scheduleSuspicion(node);
+                }
+                if (swim.alive(node)) {
+                    knownNodes.add(node);
+                }
+                break;
+        }
+    }
+
+    // A direct or indirect SWIM probe was not acked in time
+    private void onProbeTimeout(String node) {
+        timeouts.increment();
+        if (indirectProbes.add(node)) {
+            List<String> helpers = swim.randomHelpers(swimIndirectProbes, node);
+            for (String helper : helpers) {
+                send(Ping.probeRequest(localNode, helper, node, System.currentTimeMillis(), swim.piggyback(swimPiggybackMax)));
+            }
+            if (!helpers.isEmpty()) {
+                pingDeadlines.scheduleIfAbsent(node, swimProbeTimeoutMillis);
+                return;
+            }
+        }
+        indirectProbes.remove(node);
+        if (swim.suspect(node)) {
+            suspicions.increment();
+            swimSuspects.scheduleIfAbsent(node, swimSuspicionTimeoutMillis);
+        }
+    }
+
+    private void onSuspicionTimeout(String node) {
+        if (swim.getState(node) == SwimMembership.State.SUSPECT && swim.confirmDead(node)) {
+            handlePingFailure(node);
+        }
+    }
+
+    // Apply a membership change learned from another node's piggybacked gossip
+    private void onSwimUpdate(SwimMembership.Update update) {
+        switch (update.getState()) {
+            case ALIVE:
+                knownNodes.add(update.getNode());
+                swimSuspects.cancel(update.getNode());
+                break;
+            case SUSPECT:
+                swimSuspects.scheduleIfAbsent(update.getNode(), swimSuspicionTimeoutMillis);
+                break;
+            case DEAD:
+                handlePingFailure(update.getNode());
+                break;
+        }
+    }
+
+    private boolean isPhiMode() {
+        return "phi".equalsIgnoreCase(suspicionMode);
+    }
+
+    // Set the node's deadline to the moment its phi reaches the threshold, given its history so far
+    private void scheduleSuspicion(String node) {
+        long delay = phiDetector.suspicionDelay(node, phiThreshold);
+        suspicionDeadlines.reschedule(node, delay < 0 ? pingTimeoutMillis : delay);
+    }
+
+    private void checkSuspicion(String node) {
+        long now = System.currentTimeMillis();
+        if (phiDetector.phi(node, now) >= phiThreshold) {
+            suspicions.increment();
+            handlePingFailure(node);
+        } else {
+            scheduleSuspicion(node);  // A heartbeat raced the deadline
+        }
+    }
+
+    public double getPhi(String node) {
+        return phiDetector.phi(node, System.currentTimeMillis());
+    }
+
+    public long getRttPercentile(String node, double percentile) {
+        return phiDetector.rttPercentile(node, percentile);
+    }
+
+    @ManagedOperation(description = "Prints phi and RTT percentiles (ms) of every node")
+    public String printPhi() {
+        StringBuilder sb = new StringBuilder();
+        long now = System.currentTimeMillis();
+        for (String node : knownNodes) {
+            sb.append(String.format("%s: phi=%.2f rtt p50=%d p90=%d p99=%d%n", node,
+                    phiDetector.phi(node, now),
+                    phiDetector.rttPercentile(node, 50),
+                    phiDetector.rttPercentile(node, 90),
+                    phiDetector.rttPercentile(node, 99)));
+        }
+        return sb.toString();
+    }
+
+    @ManagedAttribute(description = "Median ping round-trip time in ms, over all nodes")
+    public long getRttP50() {
+        return rttMillis.getValueAtPercentile(50);
+    }
+
+    @ManagedAttribute(description = "99th percentile ping round-trip time in ms, over all nodes")
+    public long getRttP99() {
+        return rttMillis.getValueAtPercentile(99);
+    }
+
+    @ManagedAttribute(description = "99.9th percentile ping round-trip time in ms, over all nodes")
+    public long getRttP999() {
+        return rttMillis.getValueAtPercentile(99.9);
+    }
+
+    @ManagedAttribute(description = "Number of pings and probes sent")
+    public long getPingsSent() {
+        return pingsSent.sum();
+    }
+
+    @ManagedAttribute(description = "Number of acks received for our own pings")
+    public long getAcks() {
+        return acks.sum();
+    }
+
+    @ManagedAttribute(description = "Number of pings not answered within their timeout")
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    @ManagedAttribute(description = "Number of times a node was suspected (timeout, phi or SWIM)")
+    public long getSuspicions() {
+        return suspicions.sum();
+    }
+
+    @ManagedAttribute(description = "Number of nodes currently pinged")
+    public int getKnownNodeCount() {
+        return knownNodes.size();
+    }
+
+    @ManagedOperation(description = "Resets the RTT histogram")
+    public void resetRtt() {
+        rttMillis.reset();
     }
 
     // Regularly check for failed pings (no response within the timeout period)
     public void checkForPingTimeouts() {
-        long currentTime = System.currentTimeMillis();
-        for (Map.Entry<String, Long> entry : pingTimestamps.entrySet()) {
-            String node = entry.getKey();
-            long lastPingTimestamp = entry.getValue();
+        // Only the pings whose deadline falls in the elapsed ticks are visited
+        long now = System.currentTimeMillis();
+        if (swim != null) {
+            pingDeadlines.advance(now, this::onProbeTimeout);
+            swimSuspects.advance(now, this::onSuspicionTimeout);
+            relayDeadlines.advance(now, relayedProbes::remove);  // The requester times out on its own
+        } else {
+            pingDeadlines.advance(now, this::onPingTimeout);
+        }
+        if (suspicionDeadlines != null) {
+            suspicionDeadlines.advance(now, this::checkSuspicion);
+        }
+    }
 
-            // Check if the last ping response was too long ago
-            if (currentTime - lastPingTimestamp > pingTimeoutMillis) {
-                handlePingFailure(node);  // If ping response took too long, treat it as failure
-            }
+    @Override
+    public Object down(Event evt) {
+        if (evt.getType() == Event.SET_LOCAL_ADDRESS) {
+            localAddress = evt.getArg();
         }
+        return down_prot.down(evt);
     }
 
     @Override
     public void stop() {
         super.stop();
         // Optional: Clean up resources if needed when stopping the protocol
+        if (probeRounds != null) {
+            probeRounds.cancel(false);
+        }
+        if (timeoutTicker != null) {
+            timeoutTicker.shutdownNow();
+        }
     }
 
-    public static class Ping {
-        private String node;
+    @Override
+    public void destroy() {
+        if (serviceTasks != null) {
+            serviceTasks.release();
+            serviceTasks = null;
+        }
+        super.destroy();
+    }
+
+    /**
+     * Ping header with a compact binary encoding: IPv4 addresses packed into ints, varint
+     * timestamp and sequence number, and piggybacked SWIM updates in primitive arrays.
+     * A header is immutable once attached to a Message, as the transport may serialize it more
+     * than once (retransmission, loopback, several destinations), so every ping gets its own.
+     */
+    public static class Ping extends Header {
+        public static final short MAGIC_ID = 1901;
+
+        public static final byte PROBE = 0;
+        public static final byte ACK = 1;
+        public static final byte PROBE_REQ = 2;
+
+        static final int MAX_UPDATES = 16;
+        private static final int[] NO_INTS = {};
+        private static final byte[] NO_BYTES = {};
+
+        private byte type = PROBE;
+        private int node;  // The node probed (PROBE, PROBE_REQ) or acking (ACK)
+        private int from;
+        private int to;
         private long timestamp;
+        private long seq;
+        private int updateCount;
+        // Sized to updateCount; most pings carry no updates and share the empty arrays
+        private int[] updateNodes = NO_INTS;
+        private byte[] updateStates = NO_BYTES;
+        private int[] updateIncarnations = NO_INTS;
+
+        public Ping() {
+        }
 
         public Ping(String node, long timestamp) {
-            this.node = node;
+            this.node = Ips.toInt(node);
+            this.to = this.node;
             this.timestamp = timestamp;
         }
 
+        static Ping probe(String from, String target, long timestamp, long seq, List<SwimMembership.Update> updates) {
+            return new Ping().set(PROBE, from, target, target, timestamp, seq, updates);
+        }
+
+        static Ping probeRequest(String from, String helper, String target, long timestamp, List<SwimMembership.Update> updates) {
+            return new Ping().set(PROBE_REQ, from, helper, target, timestamp, 0, updates);
+        }
+
+        static Ping ack(String from, String to, long timestamp, long seq, List<SwimMembership.Update> updates) {
+            return new Ping().set(ACK, from, to, from, timestamp, seq, updates);
+        }
+
+        private Ping set(byte type, String from, String to, String node, long timestamp, long seq,
+                         List<SwimMembership.Update> updates) {
+            this.type = type;
+            this.from = Ips.toInt(from);
+            this.to = Ips.toInt(to);
+            this.node = Ips.toInt(node);
+            this.timestamp = timestamp;
+            this.seq = seq;
+            allocateUpdates(Math.min(updates.size(), MAX_UPDATES));
+            for (int i = 0; i < updateCount; i++) {
+                SwimMembership.Update update = updates.get(i);
+                updateNodes[i] = Ips.toInt(update.getNode());
+                updateStates[i] = (byte) update.getState().ordinal();
+                updateIncarnations[i] = update.getIncarnation();
+            }
+            return this;
+        }
+
+        private void allocateUpdates(int count) {
+            updateCount = count;
+            updateNodes = count == 0 ? NO_INTS : new int[count];
+            updateStates = count == 0 ? NO_BYTES : new byte[count];
+            updateIncarnations = count == 0 ? NO_INTS : new int[count];
+        }
+
+        public byte getType() {
+            return type;
+        }
+
         public String getNode() {
-            return node;
+            return Ips.toString(node);
         }
 
         public long getTimestamp() {
             return timestamp;
         }
+
+        public String getFrom() {
+            return Ips.toString(from);
+        }
+
+        // Destination of the message; differs from node for PROBE_REQ (sent to a helper) and ACK
+        public String getTo() {
+            return Ips.toString(to);
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public List<SwimMembership.Update> getUpdates() {
+            if (updateCount == 0) {
+                return Collections.emptyList();
+            }
+            SwimMembership.State[] states = SwimMembership.State.values();
+            List<SwimMembership.Update> updates = new ArrayList<>(updateCount);
+            for (int i = 0; i < updateCount; i++) {
+                updates.add(new SwimMembership.Update(Ips.toString(updateNodes[i]), states[updateStates[i]], updateIncarnations[i]));
+            }
+            return updates;
+        }
+
+        @Override
+        public short getMagicId() {
+            return MAGIC_ID;
+        }
+
+        @Override
+        public Supplier<? extends Header> create() {
+            return Ping::new;
+        }
+
+        @Override
+        public int serializedSize() {
+            int size = Global.BYTE_SIZE + 3 * Global.INT_SIZE + varLongSize(timestamp) + varLongSize(seq) + Global.BYTE_SIZE;
+            for (int i = 0; i < updateCount; i++) {
+                size += Global.INT_SIZE + Global.BYTE_SIZE + varLongSize(updateIncarnations[i]);
+            }
+            return size;
+        }
+
+        @Override
+        public void writeTo(DataOutput out) throws IOException {
+            out.writeByte(type);
+            out.writeInt(node);
+            out.writeInt(from);
+            out.writeInt(to);
+            writeVarLong(out, timestamp);
+            writeVarLong(out, seq);
+            out.writeByte(updateCount);
+            for (int i = 0; i < updateCount; i++) {
+                out.writeInt(updateNodes[i]);
+                out.writeByte(updateStates[i]);
+                writeVarLong(out, updateIncarnations[i]);
+            }
+        }
+
+        @Override
+        // Malformed input fails with an IOException, which the transport logs before dropping the message
+        public void readFrom(DataInput in) throws IOException {
+            type = in.readByte();
+            if (type < PROBE || type > PROBE_REQ) {
+                throw new IOException("Unknown ping type " + type);
+            }
+            node = in.readInt();
+            from = in.readInt();
+            to = in.readInt();
+            timestamp = readVarLong(in);
+            seq = readVarLong(in);
+            int count = in.readUnsignedByte();
+            if (count > MAX_UPDATES) {
+                throw new IOException("Too many piggybacked updates: " + count);
+            }
+            allocateUpdates(count);
+            int states = SwimMembership.State.values().length;
+            for (int i = 0; i < updateCount; i++) {
+                updateNodes[i] = in.readInt();
+                updateStates[i] = in.readByte();
+                if (updateStates[i] < 0 || updateStates[i] >= states) {
+                    throw new IOException("Unknown member state " + updateStates[i]);
+                }
+                updateIncarnations[i] = (int) readVarLong(in);
+            }
+        }
+
+        // Unsigned LEB128: 7 bits per byte, high bit set on all but the last byte
+        static void writeVarLong(DataOutput out, long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        static long readVarLong(DataInput in) throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = in.readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        static int varLongSize(long value) {
+            return value == 0 ? 1 : (64 - Long.numberOfLeadingZeros(value) + 6) / 7;
+        }
+
+        @Override
+        public String toString() {
+            return (type == PROBE ? "PROBE" : type == ACK ? "ACK" : "PROBE_REQ")
+                    + " node=" + getNode() + " from=" + getFrom() + " seq=" + seq;
+        }
+    }
+
+    /**
+     * IPv4 dotted-quad strings to packed ints and back, parsing without allocation and caching
+     * the strings so decoding a known peer's address allocates nothing.
+     */
+    static final class Ips {
+        private static final int CACHE_SIZE = 4096;  // Power of two
+        private static final String[] names = new String[CACHE_SIZE];
+        private static final int[] keys = new int[CACHE_SIZE];
+
+        // Throws IllegalArgumentException for anything but a dotted-quad IPv4 address
+        static int toInt(String ip) {
+            if (ip == null) {
+                return 0;
+            }
+            int result = 0;
+            int octet = 0;
+            int digits = 0;
+            int dots = 0;
+            for (int i = 0; i < ip.length(); i++) {
+                char c = ip.charAt(i);
+                if (c == '.' && digits > 0 && dots < 3) {
+                    result = (result << 8) | octet;
+                    octet = 0;
+                    digits = 0;
+                    dots++;
+                } else if (c >= '0' && c <= '9' && digits < 3) {
+                    octet = octet * 10 + (c - '0');
+                    digits++;
+                } else {
+                    throw new IllegalArgumentException("Not an IPv4 address: " + ip);
+                }
+                if (octet > 255) {
+                    throw new IllegalArgumentException("Not an IPv4 address: " + ip);
+                }
+            }
+            if (dots != 3 || digits == 0) {
+                throw new IllegalArgumentException("Not an IPv4 address: " + ip);
+            }
+            return (result << 8) | octet;
+        }
+
+        static String toString(int ip) {
+            int slot = (ip * 0x9E3779B9) >>> 20;  // Fibonacci hash to 12 bits
+            synchronized (names) {
+                String name = names[slot];
+                if (name != null && keys[slot] == ip) {
+                    return name;
+                }
+                name = ((ip >>> 24) & 0xFF) + "." + ((ip >>> 16) & 0xFF) + "." + ((ip >>> 8) & 0xFF) + "." + (ip & 0xFF);
+                names[slot] = name;
+                keys[slot] = ip;
+                return name;
+            }
+        }
     }
 }
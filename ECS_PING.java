@@ -1,16 +1,41 @@
 import org.jgroups.Address;
+import org.jgroups.Event;
+import org.jgroups.Message;
 import org.jgroups.PhysicalAddress;
 import org.jgroups.View;
+import org.jgroups.annotations.ManagedAttribute;
+import org.jgroups.annotations.ManagedOperation;
 import org.jgroups.annotations.Property;
 import org.jgroups.protocols.PING;
+import org.jgroups.protocols.PingData;
+import org.jgroups.protocols.PingHeader;
 import org.jgroups.stack.IpAddress;
 import org.jgroups.util.Responses;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import software.amazon.awssdk.services.ecs.EcsClient;
-import software.amazon.awssdk.services.ecs.model.*;
+import com.example.jgroups.ecs.AdaptiveRefreshScheduler;
+import com.example.jgroups.ecs.AdaptiveRefreshScheduler.Outcome;
+import com.example.jgroups.ecs.AwsClientRegistry;
+import com.example.jgroups.ecs.ConvergenceTracer;
+import com.example.jgroups.ecs.DiscoveryDelta;
+import com.example.jgroups.ecs.DiscoveryListener;
+import com.example.jgroups.ecs.DiscoveryMetrics;
+import com.example.jgroups.ecs.DnsTaskResolver;
+import com.example.jgroups.ecs.HybridDnsDiscovery;
+import com.example.jgroups.ecs.MembershipSnapshot;
+import com.example.jgroups.ecs.MicrometerDiscoveryMetrics;
+import com.example.jgroups.ecs.MultiServiceDiscovery;
+import com.example.jgroups.ecs.MultiServiceDiscovery.ServiceRef;
+import com.example.jgroups.ecs.SharedDiscoveryCache;
+import com.example.jgroups.ecs.TaskEventSource;
+import com.example.jgroups.ecs.TaskEventOrdering;
+import com.example.jgroups.ecs.TaskStateChangeEvent;
 
 import java.net.InetAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.stream.Collectors;
@@ -25,85 +50,505 @@ public class ECS_PING extends PING {
     @Property(description = "AWS ECS Service Name")
     private String ecsServiceName;
 
-    private final EcsClient ecsClient = EcsClient.create();
-    private final Set<PhysicalAddress> discoveredAddresses = new HashSet<>();
+    @Property(description = "Comma-separated cluster/service pairs discovered as one member set, e.g. " +
+            "'prod/cache-blue,prod/cache-green' (the cluster may be an ARN). Overrides ecsClusterName/ecsServiceName")
+    private String ecsServices;
+
+    @Property(description = "Maximum number of DescribeTasks batches (100 tasks each) run in parallel. Only applies " +
+            "if no other discovery client in the JVM is already using the service; otherwise its setting is kept")
+    private int describeConcurrency = 4;
+
+    @Property(description = "Describe only tasks that are new since the last refresh and apply added/removed deltas")
+    private boolean incrementalDiscovery = true;
+
+    @Property(description = "Task state change feed (sqs:<queue-url>, file:<path> or socket:<port>). " +
+            "When set, events update the members immediately and polling only reconciles")
+    private String eventSource;
+
+    @Property(description = "Polling interval in ms used for reconciliation when an event source is set, " +
+            "and for the ECS API reconciliation in hybrid mode")
+    private long reconcileInterval = 300000;
+
+    @Property(description = "How members are found: 'ecs' (ECS API) or 'hybrid' (DNS lookups of dnsQuery on the hot path, " +
+            "corrected by an ECS API reconciliation every reconcileInterval)")
+    private String discoveryMode = "ecs";
+
+    @Property(description = "Hybrid mode: Cloud Map name to resolve, either an SRV name (starting with '_') or an A record name")
+    private String dnsQuery;
+
+    @Property(description = "Hybrid mode: DNS server to ask, as dns://host[:port]; the system resolvers if not set")
+    private String dnsServer;
+
+    @Property(description = "Hybrid mode: DNS lookup interval in ms")
+    private long dnsRefreshInterval = 5000;
+
+    @Property(description = "Hybrid mode: DNS lookup timeout in ms")
+    private long dnsTimeout = 1000;
+
+    @Property(description = "Maximum age in ms of a task list shared with other channels in this JVM before it is refreshed")
+    private long discoveryCacheTtl = SharedDiscoveryCache.DEFAULT_TTL_MILLIS;
+
+    @Property(description = "Maximum time in ms findMembers waits for a refresh before answering with the known members")
+    private long discoveryTimeout = 2000;
+
+    @Property(description = "Refresh interval in ms while the member set is stable")
+    private long refreshInterval = 30000;
+
+    @Property(description = "Refresh interval in ms used right after the member set changed")
+    private long minRefreshInterval = 5000;
+
+    @Property(description = "Upper bound in ms for stretched (stable) and backed-off (throttled) refresh intervals")
+    private long maxRefreshInterval = 120000;
+
+    @Property(description = "Number of unchanged rounds after which the refresh interval starts to stretch")
+    private int stableRounds = 5;
+
+    @Property(description = "Factor the refresh interval grows by per unchanged round once the set is stable")
+    private double stretchFactor = 1.5;
+
+    @Property(description = "Random spread applied to every refresh interval, as a fraction (0.2 = +/-20%)")
+    private double refreshJitter = 0.2;
+
+    @Property(description = "File the last-known members are saved to and the first discovery round is seeded from. " +
+            "Defaults to a per-service file in the temp directory; 'none' disables it")
+    private String membershipSnapshotFile;
+
+    @Property(description = "Maximum age in ms of a membership snapshot that is still used to seed discovery")
+    private long membershipSnapshotMaxAge = 3600000;
+
+    @Property(description = "Trace how long new tasks take from ECS start to discovery, first ping and view inclusion")
+    private boolean traceConvergence = true;
+
+    private MultiServiceDiscovery discovery;
+    private HybridDnsDiscovery hybrid;
+    private AdaptiveRefreshScheduler reconcileScheduler;
+    private ScheduledExecutorService reconcileExecutor;
+    private ConvergenceTracer convergence;
+    private String clusterTag;
+    private String serviceTag;
+    private DiscoveryListener.Subscription discoverySubscription;
+    private TaskEventSource taskEvents;
+    private AdaptiveRefreshScheduler refreshScheduler;
+    private final Set<PhysicalAddress> discoveredAddresses = ConcurrentHashMap.newKeySet();
+    private MembershipSnapshot membershipSnapshot;
+    private final Set<PhysicalAddress> seededAddresses = ConcurrentHashMap.newKeySet();  // From the snapshot, until the first live ECS listing
+    private volatile boolean liveRefreshDone;
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    // Refreshes findMembers waits for; they never queue behind a scheduled (possibly backed-off) round
+    private final ExecutorService discoveryExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ECS_PING-Discovery");
+        t.setDaemon(true);
+        return t;
+    });
+    private CompletableFuture<Outcome> pendingRefresh;  // Guarded by this
+    private final Histogram refreshMillis = new ConcurrentHistogram(TimeUnit.MINUTES.toMillis(5), 2);
 
     @Override
     public void init() throws Exception {
         super.init();
+        AwsClientRegistry.shared().prewarm();  // Credentials and clients are ready by the first findMembers
+        List<ServiceRef> services = ecsServices != null ? ServiceRef.parseList(ecsServices)
+            : Collections.singletonList(new ServiceRef(ecsClusterName, ecsServiceName));
+        // All sources are refreshed in one parallel round; each backs off on its own when it fails
+        discovery = new MultiServiceDiscovery(services, describeConcurrency, discoveryCacheTtl, maxRefreshInterval);
+        clusterTag = services.stream().map(ServiceRef::getCluster).distinct().collect(Collectors.joining(","));
+        serviceTag = services.stream().map(ServiceRef::getService).distinct().collect(Collectors.joining(","));
+        if (traceConvergence) {
+            convergence = new ConvergenceTracer();
+        }
+        if ("hybrid".equalsIgnoreCase(discoveryMode)) {
+            if (dnsQuery == null) {
+                throw new IllegalArgumentException("dnsQuery is required when discoveryMode is 'hybrid'");
+            }
+            hybrid = new HybridDnsDiscovery(new DnsTaskResolver(dnsQuery, dnsServer, dnsTimeout), discovery);
+            incrementalDiscovery = true;  // DNS lookups and reconciliations are applied as deltas
+            if (eventSource != null) {
+                log.warn("eventSource is ignored in hybrid mode");
+                eventSource = null;
+            }
+        }
+        // Refreshes and task events both arrive here as ordered deltas
+        discoverySubscription = hybrid != null ? hybrid.subscribe(this::onMembersChanged)
+            : discovery.subscribe(this::onMembersChanged);
+        loadMembershipSnapshot();
+        if (eventSource != null) {
+            incrementalDiscovery = true;  // Events are applied as deltas
+            taskEvents = TaskEventSource.fromUri(eventSource);
+            taskEvents.start(new TaskEventOrdering(this::onTaskStateChange));
+        }
         startPeriodicTaskDiscovery();
+        bindMeters();
+    }
+
+    private void bindMeters() {
+        MicrometerDiscoveryMetrics.bindShared();
+        String[] tags = {"cluster", clusterTag, "service", serviceTag};
+        MicrometerDiscoveryMetrics.gauge("jgroups.ecs.discovery.members", "Discovered members", discoveredAddresses, Set::size, tags);
+        MicrometerDiscoveryMetrics.histogram("jgroups.ecs.discovery.refresh.ms", "Member refresh latency", refreshMillis, 1, tags);
+        if (convergence != null) {
+            for (String stage : convergence.getStageNames()) {
+                MicrometerDiscoveryMetrics.histogram("jgroups.ecs.convergence.ms", "Task to view convergence",
+                    convergence.getStage(stage), 1, "cluster", clusterTag, "service", serviceTag, "stage", stage);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (refreshScheduler != null) {
+            refreshScheduler.stop();
+        }
+        scheduler.shutdownNow();
+        discoveryExecutor.shutdownNow();
+        if (reconcileScheduler != null) {
+            reconcileScheduler.stop();
+            reconcileExecutor.shutdownNow();
+        }
+        if (discoverySubscription != null) {
+            discoverySubscription.close();
+        }
+        if (discovery != null) {
+            discovery.close();
+        }
+        if (taskEvents != null) {
+            taskEvents.close();
+        }
+        super.destroy();
     }
 
     @Override
     protected void findMembers(List<Address> members, boolean initialDiscovery, Responses responses) {
-        log.info("Running ECS_PING findMembers");
-        updateClusterNodes();
+        log.debug("Running ECS_PING findMembers");
+        if (!liveRefreshDone && !seededAddresses.isEmpty()) {
+            // Answer from the snapshot right away; the ECS APIs are queried in the background
+            refreshNow();
+            Set<PhysicalAddress> known = new LinkedHashSet<>(seededAddresses);
+            known.addAll(discoveredAddresses);
+            for (PhysicalAddress addr : known) {
+                responses.addResponse(null, addr);
+            }
+            sendDiscoveryRequests(known, initialDiscovery);
+            return;
+        }
 
-        for (PhysicalAddress addr : discoveredAddresses) {
+        try {
+            refreshNow().get(discoveryTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("ECS refresh did not finish within {} ms, using {} known members", discoveryTimeout, discoveredAddresses.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("ECS refresh failed", e.getCause());
+        }
+
+        Set<PhysicalAddress> known = new LinkedHashSet<>(discoveredAddresses);
+        for (PhysicalAddress addr : known) {
             responses.addResponse(null, addr);
         }
+        sendDiscoveryRequests(known, initialDiscovery);
+    }
+
+    // Unicasts a GET_MBRS_REQ to every address (multicast does not reach ECS tasks); replies reach Discovery.up()
+    private void sendDiscoveryRequests(Collection<PhysicalAddress> targets, boolean initialDiscovery) {
+        PhysicalAddress myPhysical = (PhysicalAddress) down(new Event(Event.GET_PHYSICAL_ADDRESS, local_addr));
+        PingHeader hdr = new PingHeader(PingHeader.GET_MBRS_REQ).clusterName(cluster_name).initialDiscovery(initialDiscovery);
+        for (PhysicalAddress addr : targets) {
+            if (addr.equals(myPhysical)) {
+                continue;
+            }
+            try {
+                Message msg = new Message(addr).putHeader(this.id, hdr)
+                        .setFlag(Message.Flag.INTERNAL, Message.Flag.DONT_BUNDLE, Message.Flag.OOB)
+                        .setBuffer(marshal(new PingData(local_addr, false, myPhysical)));
+                down_prot.down(msg);
+                if (convergence != null && convergence.hasPending()) {
+                    convergence.pinged(ipOf(addr));
+                }
+            } catch (Exception e) {
+                log.debug("Discovery request to {} failed: {}", addr, e.toString());
+            }
+        }
     }
 
     @Override
-    public void viewAccepted(View view) {
-        super.viewAccepted(view);
-        log.info("Updated cluster view: " + view);
+    public Object down(Event evt) {
+        Object result = super.down(evt);
+        if (evt.getType() == Event.VIEW_CHANGE) {
+            log.info("Updated cluster view: " + evt.getArg());
+        }
+        if (evt.getType() == Event.VIEW_CHANGE && convergence != null && convergence.hasPending()) {
+            View view = evt.getArg();
+            List<String> memberIps = new ArrayList<>();
+            for (Address member : view.getMembers()) {
+                Object physical = down_prot.down(new Event(Event.GET_PHYSICAL_ADDRESS, member));
+                if (physical instanceof IpAddress) {
+                    memberIps.add(ipOf((IpAddress) physical));
+                }
+            }
+            convergence.viewAccepted(memberIps);
+        }
+        return result;
+    }
+
+    private void traceDelta(DiscoveryDelta delta) {
+        if (convergence != null) {
+            convergence.removed(delta.getRemoved());
+            convergence.discovered(delta.getAdded(), discovery.getKnownTasks());
+        }
+    }
+
+    // Starts a refresh for findMembers, or returns the one still running
+    private synchronized CompletableFuture<Outcome> refreshNow() {
+        if (pendingRefresh == null || pendingRefresh.isDone()) {
+            pendingRefresh = CompletableFuture.supplyAsync(this::updateClusterNodes, discoveryExecutor);
+        }
+        return pendingRefresh;
     }
 
     private void startPeriodicTaskDiscovery() {
-        scheduler.scheduleAtFixedRate(this::updateClusterNodes, 10, 30, TimeUnit.SECONDS);
+        if (hybrid != null) {
+            // DNS lookups are cheap and run at a fixed pace; the ECS API only reconciles, on its own thread
+            refreshScheduler = new AdaptiveRefreshScheduler(scheduler, this::updateClusterNodes,
+                dnsRefreshInterval, Math.min(minRefreshInterval, dnsRefreshInterval), Math.max(dnsRefreshInterval, maxRefreshInterval),
+                stableRounds, 1.0, refreshJitter);
+            reconcileExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "ECS_PING-Reconciler");
+                t.setDaemon(true);
+                return t;
+            });
+            reconcileScheduler = new AdaptiveRefreshScheduler(reconcileExecutor, this::reconcileWithEcs,
+                reconcileInterval, reconcileInterval, Math.max(reconcileInterval, maxRefreshInterval),
+                stableRounds, 1.0, refreshJitter);
+            reconcileScheduler.start(0);
+        } else if (taskEvents != null) {
+            // Events drive membership; polling is only a slow reconciliation pass
+            refreshScheduler = new AdaptiveRefreshScheduler(scheduler, this::updateClusterNodes,
+                reconcileInterval, reconcileInterval, Math.max(reconcileInterval, maxRefreshInterval),
+                stableRounds, 1.0, refreshJitter);
+        } else {
+            refreshScheduler = new AdaptiveRefreshScheduler(scheduler, this::updateClusterNodes,
+                refreshInterval, minRefreshInterval, maxRefreshInterval, stableRounds, stretchFactor, refreshJitter);
+        }
+        refreshScheduler.start(10000);
+    }
+
+    private void onTaskStateChange(TaskStateChangeEvent event) {
+        log.debug("Task state change: {}", event);
+        discovery.apply(event);  // Routed to the matching sources, applied by onMembersChanged
     }
 
-    private void updateClusterNodes() {
+    private Outcome updateClusterNodes() {
+        long start = System.nanoTime();
         try {
-            List<String> ipAddresses = getECSTaskIPs();
-            Set<PhysicalAddress> newAddresses = ipAddresses.stream()
+            Outcome outcome = hybrid != null ? hybrid.refreshDns()
+                : incrementalDiscovery ? discovery.refresh()
+                : replaceAll(discovery.fetchAll()) ? Outcome.CHANGED : Outcome.UNCHANGED;
+            if (outcome == Outcome.THROTTLED || outcome == Outcome.FAILED) {
+                return outcome;  // Every source failed; each one logged its own error
+            }
+            if (hybrid == null) {
+                endSeeding();
+            }
+            saveMembershipSnapshot();  // Also when unchanged, so the snapshot's age reflects the last confirmation
+            return outcome;
+        } catch (Exception e) {
+            if (AdaptiveRefreshScheduler.isThrottling(e)) {
+                log.warn("ECS throttled task discovery, backing off: {}", e.getMessage());
+                return Outcome.THROTTLED;
+            }
+            log.error("Failed to fetch ECS task IPs", e);
+            return Outcome.FAILED;
+        } finally {
+            refreshMillis.recordValue(Math.min(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                refreshMillis.getHighestTrackableValue()));
+        }
+    }
+
+    // Hybrid mode: DNS can lag behind the running tasks, so only a successful ECS reconciliation ends seeding
+    private Outcome reconcileWithEcs() {
+        Outcome outcome = hybrid.reconcile();
+        if (outcome != Outcome.THROTTLED && outcome != Outcome.FAILED) {
+            endSeeding();
+        }
+        return outcome;
+    }
+
+    private void endSeeding() {
+        if (!liveRefreshDone) {
+            liveRefreshDone = true;
+            seededAddresses.clear();  // ECS now says who is running; stale snapshot entries are dropped
+        }
+    }
+
+    private boolean replaceAll(Collection<String> ipAddresses) {
+        Set<PhysicalAddress> newAddresses = ipAddresses.stream()
+            .map(this::toPhysicalAddress)
+            .filter(Objects::nonNull)
+            .collect(Collectors.toSet());
+
+        boolean changed;
+        Set<String> previousIps;
+        synchronized (discoveredAddresses) {
+            previousIps = discoveredAddresses.stream().map(ECS_PING::ipOf).collect(Collectors.toSet());
+            changed = discoveredAddresses.retainAll(newAddresses) | discoveredAddresses.addAll(newAddresses);
+        }
+        if (changed) {
+            traceDelta(DiscoveryDelta.between(previousIps, new HashSet<>(ipAddresses)));
+        }
+
+        log.debug("Discovered {} nodes, changed: {}", newAddresses.size(), changed);
+        return changed;
+    }
+
+    private void onMembersChanged(long generation, DiscoveryDelta delta) {
+        if (!incrementalDiscovery) {
+            return;  // Full-list mode replaces the members itself
+        }
+        log.debug("Discovery generation {}", generation);
+        if (applyDelta(delta)) {
+            saveMembershipSnapshot();
+        }
+    }
+
+    private boolean applyDelta(DiscoveryDelta delta) {
+        if (delta.isEmpty()) {
+            return false;
+        }
+
+        synchronized (discoveredAddresses) {
+            delta.getRemoved().stream()
+                .map(this::toPhysicalAddress)
+                .filter(Objects::nonNull)
+                .forEach(discoveredAddresses::remove);
+            delta.getAdded().stream()
                 .map(this::toPhysicalAddress)
                 .filter(Objects::nonNull)
-                .collect(Collectors.toSet());
+                .forEach(discoveredAddresses::add);
+        }
 
-            synchronized (discoveredAddresses) {
-                discoveredAddresses.clear();
-                discoveredAddresses.addAll(newAddresses);
-            }
+        traceDelta(delta);
+        log.debug("Discovered node changes: {} added, {} removed", delta.getAdded().size(), delta.getRemoved().size());
+        return true;
+    }
 
-            log.info("Updated discovered nodes: {}", discoveredAddresses);
-        } catch (Exception e) {
-            log.error("Failed to fetch ECS task IPs", e);
+    /**
+     * Adds task IPs found outside this protocol (e.g. by JGroupsClusterUpdater) to the live
+     * member set, so the next discovery round already pings them. Returns true if any was new.
+     */
+    @ManagedOperation(description = "Adds the given task IPs to the discovered members")
+    public boolean addMembers(Collection<String> ips) {
+        return injectDelta(new DiscoveryDelta(new HashSet<>(ips), Collections.emptySet()));
+    }
+
+    @ManagedOperation(description = "Removes the given task IPs from the discovered members")
+    public boolean removeMembers(Collection<String> ips) {
+        return injectDelta(new DiscoveryDelta(Collections.emptySet(), new HashSet<>(ips)));
+    }
+
+    private boolean injectDelta(DiscoveryDelta delta) {
+        Set<PhysicalAddress> previous = new HashSet<>(discoveredAddresses);
+        applyDelta(delta);
+        boolean changed = !discoveredAddresses.equals(previous);
+        if (changed) {
+            saveMembershipSnapshot();
         }
+        return changed;
     }
 
-    private List<String> getECSTaskIPs() {
-        try {
-            ListTasksRequest listTasksRequest = ListTasksRequest.builder()
-                    .cluster(ecsClusterName)
-                    .serviceName(ecsServiceName)
-                    .build();
-
-            ListTasksResponse listTasksResponse = ecsClient.listTasks(listTasksRequest);
-            if (listTasksResponse.taskArns().isEmpty()) {
-                return Collections.emptyList();
-            }
+    @ManagedAttribute(description = "Number of members currently discovered through ECS")
+    public int getDiscoveredMemberCount() {
+        return discoveredAddresses.size();
+    }
 
-            DescribeTasksRequest describeTasksRequest = DescribeTasksRequest.builder()
-                    .cluster(ecsClusterName)
-                    .tasks(listTasksResponse.taskArns())
-                    .build();
+    @ManagedAttribute(description = "Median member refresh latency in ms")
+    public long getRefreshP50() {
+        return refreshMillis.getValueAtPercentile(50);
+    }
 
-            DescribeTasksResponse describeTasksResponse = ecsClient.describeTasks(describeTasksRequest);
+    @ManagedAttribute(description = "99th percentile member refresh latency in ms")
+    public long getRefreshP99() {
+        return refreshMillis.getValueAtPercentile(99);
+    }
 
-            return describeTasksResponse.tasks().stream()
-                    .flatMap(task -> task.containers().stream())
-                    .map(container -> container.networkInterfaces().get(0).privateIpv4Address())
-                    .collect(Collectors.toList());
+    @ManagedAttribute(description = "AWS API calls made for discovery by this JVM")
+    public long getApiCalls() {
+        return DiscoveryMetrics.shared().getCalls();
+    }
 
-        } catch (Exception e) {
-            log.error("Error fetching ECS task IPs", e);
-            return Collections.emptyList();
+    @ManagedAttribute(description = "AWS API calls that were throttled")
+    public long getApiThrottled() {
+        return DiscoveryMetrics.shared().getThrottled();
+    }
+
+    @ManagedOperation(description = "Prints calls, throttles and latency percentiles of each AWS API stage")
+    public String printDiscoveryMetrics() {
+        return DiscoveryMetrics.shared().print();
+    }
+
+    @ManagedAttribute(description = "Median time in ms from ECS task start to inclusion in the view")
+    public long getConvergenceP50() {
+        return convergence != null ? convergence.getPercentileMillis(ConvergenceTracer.START_TO_VIEW, 50) : 0;
+    }
+
+    @ManagedAttribute(description = "99th percentile time in ms from ECS task start to inclusion in the view")
+    public long getConvergenceP99() {
+        return convergence != null ? convergence.getPercentileMillis(ConvergenceTracer.START_TO_VIEW, 99) : 0;
+    }
+
+    @ManagedOperation(description = "Prints convergence percentiles per stage and the timelines of recent tasks")
+    public String printConvergence() {
+        return convergence != null ? convergence.print() : "convergence tracing is disabled";
+    }
+
+    @ManagedOperation(description = "Prints the state of each cluster/service source: IPs, last outcome and failures")
+    public String printSources() {
+        return (discovery != null ? discovery.print() : "") + (hybrid != null ? hybrid.print() : "");
+    }
+
+    @ManagedAttribute(description = "Hybrid mode: IPs DNS published for tasks ECS no longer lists, at the last reconciliation")
+    public int getStaleInDns() {
+        return hybrid != null ? hybrid.getStaleInDns() : 0;
+    }
+
+    @ManagedAttribute(description = "Hybrid mode: running tasks DNS had not published yet, at the last reconciliation")
+    public int getMissingFromDns() {
+        return hybrid != null ? hybrid.getMissingFromDns() : 0;
+    }
+
+    @ManagedOperation(description = "Hybrid mode: reconciles the DNS members with the ECS API now")
+    public String reconcile() {
+        return hybrid != null ? reconcileWithEcs().toString() : "not in hybrid mode";
+    }
+
+    private void loadMembershipSnapshot() {
+        if ("none".equalsIgnoreCase(membershipSnapshotFile)) {
+            return;
+        }
+        Path file = membershipSnapshotFile != null ? Paths.get(membershipSnapshotFile)
+            : MembershipSnapshot.defaultPath(clusterTag, serviceTag);
+        membershipSnapshot = new MembershipSnapshot(file, membershipSnapshotMaxAge);
+        membershipSnapshot.load().stream()
+            .map(this::toPhysicalAddress)
+            .filter(Objects::nonNull)
+            .forEach(seededAddresses::add);
+        if (!seededAddresses.isEmpty()) {
+            log.info("Seeding discovery with {} members from {}", seededAddresses.size(), file);
+        }
+    }
+
+    private void saveMembershipSnapshot() {
+        if (membershipSnapshot != null) {
+            membershipSnapshot.save(discoveredAddresses.stream()
+                .map(ECS_PING::ipOf)
+                .sorted()
+                .collect(Collectors.toList()));
         }
     }
 
+    private static String ipOf(PhysicalAddress addr) {
+        return ((IpAddress) addr).getIpAddress().getHostAddress();
+    }
+
     private PhysicalAddress toPhysicalAddress(String ip) {
         try {
             InetAddress inetAddress = InetAddress.getByName(ip);
@@ -1,55 +1,229 @@
 package com.example.jgroups.protocols;
 
+import com.example.jgroups.ecs.AdaptiveRefreshScheduler;
+import com.example.jgroups.ecs.AdaptiveRefreshScheduler.Outcome;
+import com.example.jgroups.ecs.AwsClientRegistry;
+import com.example.jgroups.ecs.ConvergenceTracer;
+import com.example.jgroups.ecs.DiscoveryDelta;
+import com.example.jgroups.ecs.DiscoveryListener;
+import com.example.jgroups.ecs.DiscoveryMetrics;
 import com.example.jgroups.ecs.ECSDiscovery;
+import com.example.jgroups.ecs.MembershipSnapshot;
+import com.example.jgroups.ecs.MicrometerDiscoveryMetrics;
+import com.example.jgroups.ecs.TaskEventSource;
+import com.example.jgroups.ecs.TaskEventOrdering;
+import com.example.jgroups.ecs.TaskStateChangeEvent;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
 import org.jgroups.*;
+import org.jgroups.annotations.ManagedAttribute;
+import org.jgroups.annotations.ManagedOperation;
+import org.jgroups.annotations.Property;
+import org.jgroups.conf.ClassConfigurator;
 import org.jgroups.protocols.Discovery;
+import org.jgroups.protocols.PingData;
 import org.jgroups.stack.IpAddress;
 import org.jgroups.util.Responses;
 
 import java.net.InetAddress;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Custom discovery protocol for ECS tasks
  */
 public class ECS_PING extends Discovery {
 
+    static {
+        ClassConfigurator.add(ECS_PING_Header.MAGIC_ID, ECS_PING_Header.class);
+    }
+
     protected String clusterName = "your-ecs-cluster";
     protected String serviceName = "your-service-name";
+    @Property(description = "Refresh interval in ms while the member set is stable")
     protected long refreshInterval = 10000; // 10 sec default
     protected int discoveryPort = 7800;
 
+    @Property(description = "Task state change feed (sqs:<queue-url>, file:<path> or socket:<port>). " +
+            "When set, events update the members immediately and polling only reconciles")
+    protected String eventSource;
+
+    @Property(description = "Polling interval in ms used for reconciliation when an event source is set")
+    protected long reconcileInterval = 300000;
+
+    @Property(description = "Refresh interval in ms used right after the member set changed")
+    protected long minRefreshInterval = 2000;
+
+    @Property(description = "Upper bound in ms for stretched (stable) and backed-off (throttled) refresh intervals")
+    protected long maxRefreshInterval = 120000;
+
+    @Property(description = "Number of unchanged rounds after which the refresh interval starts to stretch")
+    protected int stableRounds = 5;
+
+    @Property(description = "Factor the refresh interval grows by per unchanged round once the set is stable")
+    protected double stretchFactor = 1.5;
+
+    @Property(description = "Random spread applied to every refresh interval, as a fraction (0.2 = +/-20%)")
+    protected double refreshJitter = 0.2;
+
+    @Property(description = "Time in ms findMembers waits for ping responses; peers answering later are not reported")
+    protected long pingTimeout = 1000;
+
+    @Property(description = "File the last-known members are saved to and the first discovery round is seeded from. " +
+            "Defaults to a per-service file in the temp directory; 'none' disables it")
+    protected String membershipSnapshotFile;
+
+    @Property(description = "Maximum age in ms of a membership snapshot that is still used to seed discovery")
+    protected long membershipSnapshotMaxAge = 3600000;
+
+    @Property(description = "Trace how long new tasks take from ECS start to discovery, first ping and view inclusion")
+    protected boolean traceConvergence = true;
+
     private ECSDiscovery ecsDiscovery;
+    private ConvergenceTracer convergence;
+    private MembershipSnapshot membershipSnapshot;
+    private DiscoveryListener.Subscription discoverySubscription;
+    private volatile long memberGeneration;
+    private volatile boolean liveRefreshDone;
+    private TaskEventSource taskEvents;
+    private ScheduledExecutorService refreshExecutor;
+    private AdaptiveRefreshScheduler refreshScheduler;
     private volatile List<IpAddress> currentIPs = new ArrayList<>();
     private volatile Address localAddress;
 
+    // Outstanding pings by correlation id
+    private final Map<Long, PendingPing> pendingPings = new ConcurrentHashMap<>();
+    private final AtomicLong correlationIds = new AtomicLong();
+
+    private static final long MAX_LATENCY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private final Histogram refreshMillis = new ConcurrentHistogram(MAX_LATENCY_MILLIS, 2);
+    private final Histogram pingRttMillis = new ConcurrentHistogram(MAX_LATENCY_MILLIS, 2);
+    private final LongAdder pingTimeouts = new LongAdder();  // Pings still unanswered when findMembers returned
+
+    private static class PendingPing {
+        final IpAddress target;
+        final Responses responses;
+        final CountDownLatch coordinatorFound;
+        final long sentNanos = System.nanoTime();
+
+        PendingPing(IpAddress target, Responses responses, CountDownLatch coordinatorFound) {
+            this.target = target;
+            this.responses = responses;
+            this.coordinatorFound = coordinatorFound;
+        }
+    }
+
     @Override
     public void init() throws Exception {
         super.init();
+        AwsClientRegistry.shared().prewarm();
         this.ecsDiscovery = new ECSDiscovery(clusterName, serviceName);
+        if (traceConvergence) {
+            convergence = new ConvergenceTracer();
+        }
+        loadMembershipSnapshot();
+        discoverySubscription = ecsDiscovery.subscribe(this::onMembersChanged);
+        if (eventSource != null) {
+            taskEvents = TaskEventSource.fromUri(eventSource);
+            taskEvents.start(new TaskEventOrdering(this::onTaskStateChange));
+        }
         startPeriodicRefresh();
+        bindMeters();
     }
 
-    private void startPeriodicRefresh() {
-        Thread refresher = new Thread(() -> {
-            while (!Thread.currentThread().isInterrupted()) {
-                try {
-                    updateMembers();
-                    Thread.sleep(refreshInterval);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                } catch (Exception e) {
-                    log.error("Failed to update ECS IPs", e);
-                }
+    private void bindMeters() {
+        MicrometerDiscoveryMetrics.bindShared();
+        String[] tags = {"cluster", clusterName, "service", serviceName};
+        MicrometerDiscoveryMetrics.gauge("jgroups.ecs.discovery.members", "Discovered members", this, ECS_PING::getDiscoveredMemberCount, tags);
+        MicrometerDiscoveryMetrics.histogram("jgroups.ecs.discovery.refresh.ms", "Member refresh latency", refreshMillis, 1, tags);
+        MicrometerDiscoveryMetrics.histogram("jgroups.ecs.discovery.ping.rtt.ms", "Discovery ping round-trip time", pingRttMillis, 1, tags);
+        MicrometerDiscoveryMetrics.counter("jgroups.ecs.discovery.ping.timeouts", "Discovery pings not answered in time", pingTimeouts, LongAdder::sum, tags);
+        if (convergence != null) {
+            for (String stage : convergence.getStageNames()) {
+                MicrometerDiscoveryMetrics.histogram("jgroups.ecs.convergence.ms", "Task to view convergence",
+                        convergence.getStage(stage), 1, "cluster", clusterName, "service", serviceName, "stage", stage);
             }
-        }, "ECS_PING-Refresher");
-        refresher.setDaemon(true);
-        refresher.start();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (refreshScheduler != null) {
+            refreshScheduler.stop();
+            refreshExecutor.shutdownNow();
+        }
+        if (discoverySubscription != null) {
+            discoverySubscription.close();
+        }
+        if (taskEvents != null) {
+            taskEvents.close();
+        }
+        if (ecsDiscovery != null) {
+            ecsDiscovery.close();
+        }
+        super.destroy();
+    }
+
+    private void startPeriodicRefresh() {
+        refreshExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ECS_PING-Refresher");
+            t.setDaemon(true);
+            return t;
+        });
+        if (taskEvents != null) {
+            refreshScheduler = new AdaptiveRefreshScheduler(refreshExecutor, this::updateMembers,
+                    reconcileInterval, reconcileInterval, Math.max(reconcileInterval, maxRefreshInterval),
+                    stableRounds, 1.0, refreshJitter);
+        } else {
+            refreshScheduler = new AdaptiveRefreshScheduler(refreshExecutor, this::updateMembers,
+                    refreshInterval, minRefreshInterval, maxRefreshInterval, stableRounds, stretchFactor, refreshJitter);
+        }
+        refreshScheduler.start(0);
     }
 
-    private void updateMembers() {
-        List<String> ips = ecsDiscovery.getRunningTaskIPs();
+    private Outcome updateMembers() {
+        long start = System.nanoTime();
+        try {
+            return refreshMembers();
+        } finally {
+            record(refreshMillis, System.nanoTime() - start);
+        }
+    }
+
+    private static void record(Histogram histogram, long nanos) {
+        histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMillis(nanos), MAX_LATENCY_MILLIS));
+    }
+
+    private Outcome refreshMembers() {
+        List<String> ips;
+        try {
+            if (liveRefreshDone) {
+                long before = memberGeneration;
+                ecsDiscovery.refresh();  // Changes arrive through onMembersChanged
+                return memberGeneration != before ? Outcome.CHANGED : Outcome.UNCHANGED;
+            }
+            // The first live result replaces the whole list, dropping anything seeded from the snapshot
+            ips = ecsDiscovery.getRunningTaskIPs();
+        } catch (Exception e) {
+            if (AdaptiveRefreshScheduler.isThrottling(e)) {
+                log.warn("ECS throttled task discovery, backing off: " + e.getMessage());
+                return Outcome.THROTTLED;
+            }
+            log.error("Failed to update ECS IPs", e);
+            return Outcome.FAILED;
+        }
         List<IpAddress> updated = new ArrayList<>();
         for (String ip : ips) {
             try {
@@ -59,20 +233,135 @@ public class ECS_PING extends Discovery {
                 log.error("Invalid IP from ECS: " + ip, e);
             }
         }
+        boolean changed = !new HashSet<>(updated).equals(new HashSet<>(currentIPs));
+        synchronized (this) {
+            if (convergence != null) {
+                List<String> gone = ipsOf(currentIPs);
+                gone.removeAll(ips);
+                convergence.removed(gone);
+                convergence.discovered(ips, ecsDiscovery.getKnownTasks());
+            }
+            currentIPs = updated;
+            liveRefreshDone = true;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Refreshed ECS members: " + updated.size() + " IPs, changed: " + changed);
+        }
+        saveMembershipSnapshot();  // Also when unchanged, so the snapshot's age reflects the last confirmation
+        return changed ? Outcome.CHANGED : Outcome.UNCHANGED;
+    }
+
+    // Seeds the members from the last run, so the first findMembers pings them before ECS has answered
+    private void loadMembershipSnapshot() {
+        if ("none".equalsIgnoreCase(membershipSnapshotFile)) {
+            return;
+        }
+        membershipSnapshot = new MembershipSnapshot(membershipSnapshotFile != null ? Paths.get(membershipSnapshotFile)
+                : MembershipSnapshot.defaultPath(clusterName, serviceName), membershipSnapshotMaxAge);
+        List<IpAddress> seeded = new ArrayList<>();
+        for (String ip : membershipSnapshot.load()) {
+            try {
+                seeded.add(new IpAddress(InetAddress.getByName(ip), discoveryPort));
+            } catch (Exception e) {
+                log.warn("Ignoring invalid address in membership snapshot: " + ip);
+            }
+        }
+        if (!seeded.isEmpty()) {
+            currentIPs = seeded;
+            log.info("Seeded " + seeded.size() + " ECS members from " + membershipSnapshot.getFile());
+        }
+    }
+
+    private void saveMembershipSnapshot() {
+        if (membershipSnapshot != null) {
+            membershipSnapshot.save(ipsOf(currentIPs));
+        }
+    }
+
+    private synchronized void onMembersChanged(long generation, DiscoveryDelta delta) {
+        memberGeneration = generation;
+        if (convergence != null) {
+            convergence.removed(delta.getRemoved());
+            convergence.discovered(delta.getAdded(), ecsDiscovery.getKnownTasks());
+        }
+        removeMembers(delta.getRemoved());
+        addMembers(delta.getAdded());
+        if (log.isDebugEnabled()) {
+            log.debug("Applied ECS discovery generation " + generation + ": " + delta.getAdded().size() + " added, "
+                    + delta.getRemoved().size() + " removed");
+        }
+    }
+
+    /**
+     * Adds task IPs found outside this protocol to the live member list; the next findMembers
+     * pings them. Returns true if any was new.
+     */
+    @ManagedOperation(description = "Adds the given task IPs to the ECS members")
+    public synchronized boolean addMembers(Collection<String> ips) {
+        List<IpAddress> updated = new ArrayList<>(currentIPs);
+        for (String ip : ips) {
+            try {
+                IpAddress addr = new IpAddress(InetAddress.getByName(ip), discoveryPort);
+                if (!updated.contains(addr)) {
+                    updated.add(addr);
+                }
+            } catch (Exception e) {
+                log.warn("Ignoring invalid member IP: " + ip);
+            }
+        }
+        return replaceMembers(updated);
+    }
+
+    @ManagedOperation(description = "Removes the given task IPs from the ECS members")
+    public synchronized boolean removeMembers(Collection<String> ips) {
+        List<IpAddress> updated = new ArrayList<>(currentIPs);
+        updated.removeIf(addr -> ips.contains(addr.getIpAddress().getHostAddress()));
+        return replaceMembers(updated);
+    }
+
+    private boolean replaceMembers(List<IpAddress> updated) {
+        if (updated.size() == currentIPs.size() && new HashSet<>(updated).equals(new HashSet<>(currentIPs))) {
+            return false;
+        }
         currentIPs = updated;
-        log.debug("Refreshed ECS member IPs: " + currentIPs);
+        saveMembershipSnapshot();
+        return true;
+    }
+
+    private synchronized void onTaskStateChange(TaskStateChangeEvent event) {
+        if (!event.matches(clusterName, serviceName) || event.getPrivateIp() == null) {
+            return;
+        }
+        try {
+            IpAddress addr = new IpAddress(InetAddress.getByName(event.getPrivateIp()), discoveryPort);
+            List<IpAddress> updated = new ArrayList<>(currentIPs);
+            if (event.isStopping()) {
+                updated.remove(addr);
+                if (convergence != null) {
+                    convergence.removed(Collections.singleton(event.getPrivateIp()));
+                }
+            } else if (event.isRunning() && !updated.contains(addr)) {
+                updated.add(addr);
+                if (convergence != null) {
+                    convergence.discovered(Collections.singleton(event.getPrivateIp()), ecsDiscovery.getKnownTasks());
+                }
+            }
+            currentIPs = updated;
+            log.debug("Applied task state change " + event + ", " + currentIPs.size() + " member IPs");
+            saveMembershipSnapshot();
+        } catch (Exception e) {
+            log.error("Invalid IP in task event: " + event, e);
+        }
     }
-    private boolean sendPing(PhysicalAddress dest) {
+    private boolean sendPing(IpAddress dest, long correlationId, IpAddress replyTo) {
         try {
             // Build header
-            ECS_PING_Header hdr = new ECS_PING_Header(ECS_PING_Header.PING_REQ);
+            ECS_PING_Header hdr = new ECS_PING_Header(ECS_PING_Header.PING_REQ)
+                    .correlationId(correlationId)
+                    .replyTo(replyTo);
             Message msg = new Message(dest).putHeader(this.id, hdr);
             msg.setFlag(Message.Flag.INTERNAL, Message.Flag.OOB);
-    
-            // Send and wait for response (simplified)
-            down(new Event(Event.MSG, msg));
-    
-            // Optional: implement some waiting mechanism or response collection here
+            down(msg);
             return true;
         } catch (Exception e) {
             log.warn("Ping to " + dest + " failed", e);
@@ -82,28 +371,167 @@ public class ECS_PING extends Discovery {
 
     @Override
     protected void findMembers(List<Address> members, boolean initialDiscovery, Responses responses) {
-         PhysicalAddress myPhysical = (PhysicalAddress) down(new Event(Event.GET_PHYSICAL_ADDRESS, localAddress));
-        
+        PhysicalAddress myPhysical = (PhysicalAddress) down(new Event(Event.GET_PHYSICAL_ADDRESS, localAddress));
+
         // Add self
         PingData selfPing = new PingData(localAddress, true, myPhysical);
         responses.addResponse(selfPing);
-        
-        // Add others
+
+        // Ping all others at once; replies are matched in up() and added to the responses as they arrive
+        CountDownLatch coordinatorFound = new CountDownLatch(1);
+        List<Long> sent = new ArrayList<>();
         for (IpAddress addr : currentIPs) {
             if (addr.equals(myPhysical)) continue;
-            boolean success = sendPing(addr); // Custom ping method
-        
-            if (success) {
-                System.out.println("[ECS_PING] Ping SUCCESS to: " + addr);
-                responses.addResponse(new PingData(null, false, addr));
+            long correlationId = correlationIds.incrementAndGet();
+            pendingPings.put(correlationId, new PendingPing(addr, responses, coordinatorFound));
+            if (sendPing(addr, correlationId, (IpAddress) myPhysical)) {
+                sent.add(correlationId);
+                if (convergence != null) {
+                    convergence.pinged(addr.getIpAddress().getHostAddress());
+                }
             } else {
-                System.out.println("[ECS_PING] Ping FAILED to: " + addr);
+                pendingPings.remove(correlationId);
+            }
+        }
+
+        try {
+            // Return as soon as the coordinator answers; dead IPs only cost up to pingTimeout
+            if (!sent.isEmpty() && !coordinatorFound.await(pingTimeout, TimeUnit.MILLISECONDS)) {
+                log.debug("No coordinator answered within " + pingTimeout + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            int unanswered = 0;
+            for (Long correlationId : sent) {
+                if (pendingPings.remove(correlationId) != null) {
+                    unanswered++;
+                }
             }
+            pingTimeouts.add(unanswered);
+            log.debug("Pinged " + sent.size() + " ECS members, " + unanswered + " did not answer in time");
         }
-        
+
         responses.done(); // Signal completion
     }
 
+    @Override
+    public Object up(Message msg) {
+        // Discovery's own PingHeaders share our protocol id
+        Header header = msg.getHeader(this.id);
+        if (!(header instanceof ECS_PING_Header)) {
+            return super.up(msg);
+        }
+        ECS_PING_Header hdr = (ECS_PING_Header) header;
+
+        switch (hdr.getType()) {
+            case ECS_PING_Header.PING_REQ:
+                ECS_PING_Header rsp = new ECS_PING_Header(ECS_PING_Header.PING_RSP)
+                        .correlationId(hdr.getCorrelationId())
+                        .coord(is_coord);
+                Message reply = new Message(hdr.getReplyTo() != null ? hdr.getReplyTo() : msg.getSrc()).putHeader(this.id, rsp);
+                reply.setFlag(Message.Flag.INTERNAL, Message.Flag.OOB);
+                down(reply);
+                break;
+            case ECS_PING_Header.PING_RSP:
+                PendingPing ping = pendingPings.remove(hdr.getCorrelationId());
+                if (ping != null) {
+                    record(pingRttMillis, System.nanoTime() - ping.sentNanos);
+                    ping.responses.addResponse(new PingData(msg.getSrc(), true, ping.target).coord(hdr.isCoord()));
+                    if (hdr.isCoord()) {
+                        ping.coordinatorFound.countDown();
+                    }
+                }
+                break;
+        }
+        return null;
+    }
+
+    @ManagedAttribute(description = "Number of members currently discovered through ECS")
+    public int getDiscoveredMemberCount() {
+        return currentIPs.size();
+    }
+
+    @ManagedAttribute(description = "Median member refresh latency in ms")
+    public long getRefreshP50() {
+        return refreshMillis.getValueAtPercentile(50);
+    }
+
+    @ManagedAttribute(description = "99th percentile member refresh latency in ms")
+    public long getRefreshP99() {
+        return refreshMillis.getValueAtPercentile(99);
+    }
+
+    @ManagedAttribute(description = "Median discovery ping round-trip time in ms")
+    public long getPingRttP50() {
+        return pingRttMillis.getValueAtPercentile(50);
+    }
+
+    @ManagedAttribute(description = "99th percentile discovery ping round-trip time in ms")
+    public long getPingRttP99() {
+        return pingRttMillis.getValueAtPercentile(99);
+    }
+
+    @ManagedAttribute(description = "Number of discovery pings not answered before findMembers returned")
+    public long getPingTimeouts() {
+        return pingTimeouts.sum();
+    }
+
+    @ManagedAttribute(description = "AWS API calls made for discovery by this JVM")
+    public long getApiCalls() {
+        return DiscoveryMetrics.shared().getCalls();
+    }
+
+    @ManagedAttribute(description = "AWS API calls that were throttled")
+    public long getApiThrottled() {
+        return DiscoveryMetrics.shared().getThrottled();
+    }
+
+    @ManagedOperation(description = "Prints calls, throttles and latency percentiles of each AWS API stage")
+    public String printDiscoveryMetrics() {
+        return DiscoveryMetrics.shared().print();
+    }
+
+    @ManagedAttribute(description = "Median time in ms from ECS task start to inclusion in the view")
+    public long getConvergenceP50() {
+        return convergence != null ? convergence.getPercentileMillis(ConvergenceTracer.START_TO_VIEW, 50) : 0;
+    }
+
+    @ManagedAttribute(description = "99th percentile time in ms from ECS task start to inclusion in the view")
+    public long getConvergenceP99() {
+        return convergence != null ? convergence.getPercentileMillis(ConvergenceTracer.START_TO_VIEW, 99) : 0;
+    }
+
+    @ManagedOperation(description = "Prints convergence percentiles per stage and the timelines of recent tasks")
+    public String printConvergence() {
+        return convergence != null ? convergence.print() : "convergence tracing is disabled";
+    }
+
+    @Override
+    public Object down(Event evt) {
+        Object result = super.down(evt);
+        if (evt.getType() == Event.VIEW_CHANGE && convergence != null && convergence.hasPending()) {
+            View view = evt.getArg();
+            List<String> memberIps = new ArrayList<>();
+            for (Address member : view.getMembers()) {
+                Object physical = down_prot.down(new Event(Event.GET_PHYSICAL_ADDRESS, member));
+                if (physical instanceof IpAddress) {
+                    memberIps.add(((IpAddress) physical).getIpAddress().getHostAddress());
+                }
+            }
+            convergence.viewAccepted(memberIps);
+        }
+        return result;
+    }
+
+    private static List<String> ipsOf(List<IpAddress> addresses) {
+        List<String> ips = new ArrayList<>(addresses.size());
+        for (IpAddress addr : addresses) {
+            ips.add(addr.getIpAddress().getHostAddress());
+        }
+        return ips;
+    }
+
     @Override
     public Object up(Event evt) {
         switch (evt.getType()) {
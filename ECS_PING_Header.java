@@ -0,0 +1,101 @@
+package com.example.jgroups.protocols;
+
+import org.jgroups.Global;
+import org.jgroups.Header;
+import org.jgroups.stack.IpAddress;
+import org.jgroups.util.Util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.util.function.Supplier;
+
+/**
+ * Header of the ECS_PING request/response pings. A response echoes the correlation id of
+ * its request so the sender can match it, and says whether the responder is coordinator.
+ */
+public class ECS_PING_Header extends Header {
+
+    public static final short MAGIC_ID = 1900;
+
+    public static final byte PING_REQ = 1;
+    public static final byte PING_RSP = 2;
+
+    protected byte type;
+    protected long correlationId;
+    protected boolean coord;
+    protected IpAddress replyTo;  // Physical address of the requester, so the reply needs no logical address mapping
+
+    public ECS_PING_Header() {
+    }
+
+    public ECS_PING_Header(byte type) {
+        this.type = type;
+    }
+
+    public ECS_PING_Header correlationId(long correlationId) {
+        this.correlationId = correlationId;
+        return this;
+    }
+
+    public ECS_PING_Header coord(boolean coord) {
+        this.coord = coord;
+        return this;
+    }
+
+    public ECS_PING_Header replyTo(IpAddress replyTo) {
+        this.replyTo = replyTo;
+        return this;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public long getCorrelationId() {
+        return correlationId;
+    }
+
+    public boolean isCoord() {
+        return coord;
+    }
+
+    public IpAddress getReplyTo() {
+        return replyTo;
+    }
+
+    @Override
+    public short getMagicId() {
+        return MAGIC_ID;
+    }
+
+    @Override
+    public Supplier<? extends Header> create() {
+        return ECS_PING_Header::new;
+    }
+
+    @Override
+    public int serializedSize() {
+        return Global.BYTE_SIZE + Global.LONG_SIZE + Global.BYTE_SIZE + Util.size(replyTo);
+    }
+
+    @Override
+    public void writeTo(DataOutput out) throws Exception {
+        out.writeByte(type);
+        out.writeLong(correlationId);
+        out.writeBoolean(coord);
+        Util.writeAddress(replyTo, out);
+    }
+
+    @Override
+    public void readFrom(DataInput in) throws Exception {
+        type = in.readByte();
+        correlationId = in.readLong();
+        coord = in.readBoolean();
+        replyTo = (IpAddress) Util.readAddress(in);
+    }
+
+    @Override
+    public String toString() {
+        return (type == PING_REQ ? "PING_REQ" : "PING_RSP") + " id=" + correlationId + (coord ? " coord" : "");
+    }
+}
@@ -1,94 +1,95 @@
+import com.example.jgroups.ecs.AwsClientRegistry;
+import com.example.jgroups.ecs.DiscoveryMetrics;
+import com.example.jgroups.ecs.ECSAsyncTaskDiscovery;
+import com.example.jgroups.ecs.ECSTaskDiscoveryEngine;
+import com.example.jgroups.ecs.EniAddressResolver;
+import com.example.jgroups.ecs.SharedDiscoveryCache;
+import com.example.jgroups.ecs.TaskMetadataClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.services.ecs.EcsClient;
 import software.amazon.awssdk.services.ecs.model.*;
 import software.amazon.awssdk.services.ec2.Ec2Client;
-import software.amazon.awssdk.services.ec2.model.*;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 
 public class ECSNodeIPResolver {
 
-    private static final String METADATA_URI = System.getenv("ECS_CONTAINER_METADATA_URI_V4");
-    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final Logger log = LoggerFactory.getLogger(ECSNodeIPResolver.class);
 
-    private final EcsClient ecsClient = EcsClient.create();
-    private final Ec2Client ec2Client = Ec2Client.create();
+    private final TaskMetadataClient metadataClient = TaskMetadataClient.shared();
+    private final AwsClientRegistry clients = AwsClientRegistry.shared();
+    private final EcsClient ecsClient = clients.ecs();
+    private final Ec2Client ec2Client = clients.ec2();
+    private final EniAddressResolver eniResolver = new EniAddressResolver(ec2Client, clients::ec2Async);
+    private SharedDiscoveryCache.ServiceTasks serviceTasks;  // Taken on the first lookup, given back by close()
 
     public List<String> getPrivateIpsOfServiceTasks() {
         try {
-            // Step 1: Get cluster name and task ARN
-            JsonNode metadata = fetchMetadata();
-            String clusterArn = metadata.path("Cluster").asText();
-            String taskArn = metadata.path("TaskARN").asText();
+            // Step 1: Get cluster name (memoized for the life of the task)
+            String clusterArn = metadataClient.get().getCluster();
 
-            // Step 2: Get service name via task tags (must enable ECS managed tags)
-            String serviceName = getServiceNameFromTags(clusterArn, taskArn);
+            // Step 2: Get service name from metadata or task tags (must enable ECS managed tags), looked up once
+            String serviceName = getServiceName();
             if (serviceName == null) {
                 throw new RuntimeException("Could not determine service name from task tags");
             }
 
-            // Step 3: List running tasks for the service
-            ListTasksResponse listTasks = ecsClient.listTasks(ListTasksRequest.builder()
-                    .cluster(clusterArn)
-                    .serviceName(serviceName)
-                    .desiredStatus(DesiredStatus.RUNNING)
-                    .build());
-
-            List<String> taskArns = listTasks.taskArns();
-            if (taskArns.isEmpty()) return Collections.emptyList();
-
-            // Step 4: Describe those tasks
-            DescribeTasksResponse tasksResponse = ecsClient.describeTasks(DescribeTasksRequest.builder()
-                    .cluster(clusterArn)
-                    .tasks(taskArns)
-                    .build());
-
-            List<String> eniIds = tasksResponse.tasks().stream()
-                    .flatMap(task -> task.attachments().stream())
-                    .flatMap(att -> att.details().stream())
-                    .filter(d -> d.name().equals("networkInterfaceId"))
-                    .map(KeyValuePair::value)
-                    .collect(Collectors.toList());
+            // Step 3 & 4: Running tasks of the service, shared with other discovery clients in this JVM
+            Collection<Task> tasks = serviceTasks(clusterArn, serviceName).get().getTasks().values();
+            if (tasks.isEmpty()) return Collections.emptyList();
 
-            // Step 5: Fetch private IPs from EC2
-            DescribeNetworkInterfacesResponse eniResp = ec2Client.describeNetworkInterfaces(r -> r
-                    .networkInterfaceIds(eniIds));
-
-            return eniResp.networkInterfaces().stream()
-                    .map(NetworkInterface::privateIpAddress)
-                    .collect(Collectors.toList());
+            // Step 5: IPs from the ENI attachments, falling back to EC2 only for unseen ENIs
+            return new ArrayList<>(eniResolver.resolve(new ArrayList<>(tasks)).values());
 
         } catch (Exception e) {
             throw new RuntimeException("Failed to get IPs of tasks in service", e);
         }
     }
 
-    private JsonNode fetchMetadata() throws Exception {
-        URL url = new URL(METADATA_URI + "/task");
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        try (InputStream in = conn.getInputStream()) {
-            return mapper.readTree(in);
+    // Non-blocking variant; only the local metadata lookup runs on a pool thread
+    public CompletableFuture<List<String>> getPrivateIpsOfServiceTasksAsync() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                String clusterArn = metadataClient.get().getCluster();
+                String serviceName = getServiceName();
+                if (serviceName == null) {
+                    throw new RuntimeException("Could not determine service name from task tags");
+                }
+                return new ECSAsyncTaskDiscovery(clients.ecsAsync(), eniResolver, serviceTasks(clusterArn, serviceName),
+                        clusterArn, serviceName, SharedDiscoveryCache.DEFAULT_TTL_MILLIS);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to read task metadata", e);
+            }
+        }).thenCompose(ECSAsyncTaskDiscovery::getTaskPrivateIps);
+    }
+
+    // The cluster and service come from this task's metadata, so they never change
+    private synchronized SharedDiscoveryCache.ServiceTasks serviceTasks(String clusterArn, String serviceName) {
+        if (serviceTasks == null) {
+            serviceTasks = SharedDiscoveryCache.forService(clusterArn, serviceName,
+                    () -> new ECSTaskDiscoveryEngine(ecsClient, clusterArn, serviceName, 4));
+        }
+        return serviceTasks;
+    }
+
+    public synchronized void close() {
+        if (serviceTasks != null) {
+            serviceTasks.release();
+            serviceTasks = null;
         }
     }
 
-    private String getServiceNameFromTags(String clusterArn, String taskArn) {
+    private String getServiceName() {
         try {
-            ListTagsForResourceResponse tagsResp = ecsClient.listTagsForResource(r -> r.resourceArn(taskArn));
-            for (Tag tag : tagsResp.tags()) {
-                if (tag.key().equals("ecs:serviceName")) {
-                    return tag.value();
-                }
-            }
+            return metadataClient.getServiceName(ecsClient);
         } catch (Exception e) {
-            System.err.println("Unable to fetch serviceName from tags: " + e.getMessage());
+            log.warn("Unable to fetch serviceName from tags: {}", e.getMessage());
+            DiscoveryMetrics.shared().recordFailure(DiscoveryMetrics.CLIENT, e);
+            return null;
         }
-        return null;
     }
 }
@@ -1,25 +1,53 @@
 package com.example.jgroups.ping;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.jgroups.ecs.AwsClientRegistry;
+import com.example.jgroups.ecs.ECSTaskDiscoveryEngine;
+import com.example.jgroups.ecs.EniAddressResolver;
+import com.example.jgroups.ecs.SharedDiscoveryCache;
+import com.example.jgroups.ecs.TaskMetadataClient;
+import org.jgroups.Address;
+import org.jgroups.Message;
 import org.jgroups.PhysicalAddress;
+import org.jgroups.annotations.Property;
 import org.jgroups.protocols.FILE_PING;
+import org.jgroups.protocols.PingData;
+import org.jgroups.protocols.PingHeader;
 import org.jgroups.stack.IpAddress;
+import org.jgroups.util.Responses;
 import org.jgroups.util.Tuple;
 import org.jgroups.util.UUID;
+import software.amazon.awssdk.services.ecs.model.Task;
 
-import java.io.InputStream;
+import java.io.File;
 import java.net.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class ECSOrLocalPing extends FILE_PING {
 
-    private static final Map<UUID, Tuple<PhysicalAddress, byte[]>> memoryStore = new ConcurrentHashMap<>();
+    // One store per cluster name, so channels of different clusters in this JVM do not see each other
+    private static final Map<String, VersionedDiscoveryStore<UUID, Tuple<PhysicalAddress, byte[]>>> stores = new ConcurrentHashMap<>();
     private static final Set<PhysicalAddress> knownHosts = Collections.synchronizedSet(new LinkedHashSet<>());
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Property(description = "Registry used outside ECS: memory (this JVM only) or mmap (all JVMs on this host)")
+    private String localBackend = "memory";
+
+    @Property(description = "File mapped by the mmap backend; every JVM that should see each other must use the same path")
+    private String registryFile = System.getProperty("java.io.tmpdir") + File.separator + "jgroups-ecs-local.registry";
+
+    @Property(description = "Number of member slots in the mmap registry (only used by the JVM that creates the file)")
+    private int registrySlots = 256;
+
+    @Property(description = "Time in ms after which an mmap registry entry without a heartbeat is ignored")
+    private long registryExpiry = 10000;
 
     private boolean isEcs = false;
+    // Per cluster name: the store version this channel last read, and the responses built from it
+    private final Map<String, Long> lastSeenVersions = new ConcurrentHashMap<>();
+    private final Map<String, Map<UUID, PingData>> localResponses = new ConcurrentHashMap<>();
+    private MappedDiscoveryRegistry sharedRegistry;
+    private SharedDiscoveryCache.ServiceTasks serviceTasks;
+    private EniAddressResolver eniResolver;
 
     @Override
     public void init() throws Exception {
@@ -27,14 +55,33 @@ public class ECSOrLocalPing extends FILE_PING {
         isEcs = detectEcsEnvironment();
         knownHosts.clear();
         if (isEcs) {
+            AwsClientRegistry.shared().prewarm();
             discoverEcsTaskIps();
         } else {
             addLocalIp();
+            if ("mmap".equalsIgnoreCase(localBackend)) {
+                sharedRegistry = new MappedDiscoveryRegistry(registryFile, registrySlots, registryExpiry);
+                log.info("Sharing local discovery through " + registryFile);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (sharedRegistry != null) {
+            sharedRegistry.close();
         }
+        synchronized (this) {
+            if (serviceTasks != null) {
+                serviceTasks.release();
+                serviceTasks = null;
+            }
+        }
+        super.destroy();
     }
 
     private boolean detectEcsEnvironment() {
-        return System.getenv("ECS_CONTAINER_METADATA_URI_V4") != null;
+        return TaskMetadataClient.isEcs();
     }
 
     private void addLocalIp() {
@@ -49,148 +96,113 @@ public class ECSOrLocalPing extends FILE_PING {
 
     private void discoverEcsTaskIps() {
         try {
-            String metadataUri = System.getenv("ECS_CONTAINER_METADATA_URI_V4");
-            if (metadataUri == null) return;
-
-            URL url = new URL(metadataUri + "/task");
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-
-            try (InputStream in = conn.getInputStream()) {
-                JsonNode root = objectMapper.readTree(in);
-                JsonNode containers = root.path("Containers");
-
-                for (JsonNode container : containers) {
-                    String networkMode = container.path("Networks").get(0).path("NetworkMode").asText();
-                    String ipAddress = container.path("Networks").get(0).path("IPv4Addresses").get(0).asText();
-                    log.info("Discovered ECS IP: " + ipAddress + " (mode: " + networkMode + ")");
-                    knownHosts.add(new IpAddress(ipAddress, bind_port));
-                }
+            // Streamed once from the metadata endpoint and memoized for the life of the task
+            TaskMetadataClient.TaskMetadata metadata = TaskMetadataClient.shared().get();
+            for (String ipAddress : metadata.getContainerAddresses()) {
+                log.info("Discovered ECS IP: " + ipAddress + " (mode: " + metadata.getNetworkMode() + ")");
+                knownHosts.add(new IpAddress(ipAddress, bind_port));
             }
         } catch (Exception e) {
             log.error("Failed to discover ECS IPs", e);
         }
     }
 
-    @Override
-    protected Map<UUID, Tuple<PhysicalAddress, byte[]>> read(String clustername) {
-        return new HashMap<>(memoryStore);
-    }
-
-    @Override
-    protected void write(String clustername, UUID logical_addr, PhysicalAddress phys_addr, byte[] data) {
-        memoryStore.put(logical_addr, new Tuple<>(phys_addr, data));
+    private static VersionedDiscoveryStore<UUID, Tuple<PhysicalAddress, byte[]>> store(String clustername) {
+        return stores.computeIfAbsent(clustername, name -> new VersionedDiscoveryStore<>(
+                (a, b) -> a.getVal1().equals(b.getVal1()) && Arrays.equals(a.getVal2(), b.getVal2())));
     }
 
     @Override
-    protected void remove(String clustername, UUID addr) {
-        memoryStore.remove(addr);
-    }
-
-    @Override
-    protected void clear(String clustername) {
-        memoryStore.clear();
-    }
-
-    @Override
-    protected Collection<PhysicalAddress> getPhysicalAddresses() {
-        return new ArrayList<>(knownHosts);
-    }
-
-    @Override
-    public boolean isDynamic() {
-        return true;
-    }
-}package com.example.jgroups.ping;
-
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.jgroups.PhysicalAddress;
-import org.jgroups.protocols.FILE_PING;
-import org.jgroups.stack.IpAddress;
-import org.jgroups.util.Tuple;
-import org.jgroups.util.UUID;
-
-import java.io.InputStream;
-import java.net.*;
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
-public class ECSOrLocalPing extends FILE_PING {
-
-    private static final Map<UUID, Tuple<PhysicalAddress, byte[]>> memoryStore = new ConcurrentHashMap<>();
-    private static final Set<PhysicalAddress> knownHosts = Collections.synchronizedSet(new LinkedHashSet<>());
-    private static final ObjectMapper objectMapper = new ObjectMapper();
-
-    private boolean isEcs = false;
-
-    @Override
-    public void init() throws Exception {
-        super.init();
-        isEcs = detectEcsEnvironment();
-        knownHosts.clear();
-        if (isEcs) {
-            discoverEcsTaskIps();
-        } else {
-            addLocalIp();
+    protected Map<UUID, Tuple<PhysicalAddress, byte[]>> read(String clustername) {
+        if (sharedRegistry != null) {
+            return readShared(clustername);
         }
+        // Immutable snapshot; no copy is made, whether or not anything changed
+        return store(clustername).snapshot().getEntries();
     }
 
-    private boolean detectEcsEnvironment() {
-        return System.getenv("ECS_CONTAINER_METADATA_URI_V4") != null;
+    // The mapped registry, plus the members of this JVM whose entry did not fit in it
+    private Map<UUID, Tuple<PhysicalAddress, byte[]>> readShared(String clustername) {
+        Map<UUID, Tuple<PhysicalAddress, byte[]>> entries = sharedRegistry.read(clustername);
+        entries.putAll(store(clustername).snapshot().getEntries());
+        return entries;
     }
 
-    private void addLocalIp() {
-        try {
-            String localIp = InetAddress.getLocalHost().getHostAddress();
-            knownHosts.add(new IpAddress(localIp, bind_port));
-            log.info("Added local IP: " + localIp);
-        } catch (Exception e) {
-            log.error("Could not add local IP", e);
+    // Entries written or removed since this channel's previous call for the cluster; empty (and free) when nothing changed
+    protected VersionedDiscoveryStore.Changes<UUID, Tuple<PhysicalAddress, byte[]>> readChanges(String clustername) {
+        if (sharedRegistry != null) {
+            // Other JVMs write without bumping our versions, so the mapped registry is always re-read in full
+            return new VersionedDiscoveryStore.Changes<>(0, true, readShared(clustername), Collections.emptySet());
         }
+        VersionedDiscoveryStore.Changes<UUID, Tuple<PhysicalAddress, byte[]>> changes =
+                store(clustername).changesSince(lastSeenVersions.getOrDefault(clustername, 0L));
+        lastSeenVersions.put(clustername, changes.getVersion());
+        return changes;
     }
 
-    private void discoverEcsTaskIps() {
-        try {
-            String metadataUri = System.getenv("ECS_CONTAINER_METADATA_URI_V4");
-            if (metadataUri == null) return;
-
-            URL url = new URL(metadataUri + "/task");
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-
-            try (InputStream in = conn.getInputStream()) {
-                JsonNode root = objectMapper.readTree(in);
-                JsonNode containers = root.path("Containers");
-
-                for (JsonNode container : containers) {
-                    String networkMode = container.path("Networks").get(0).path("NetworkMode").asText();
-                    String ipAddress = container.path("Networks").get(0).path("IPv4Addresses").get(0).asText();
-                    log.info("Discovered ECS IP: " + ipAddress + " (mode: " + networkMode + ")");
-                    knownHosts.add(new IpAddress(ipAddress, bind_port));
+    // Outside ECS: answers from the responses built on earlier rounds, patched with only what changed since
+    private void readLocal(List<Address> members, String clusterName, Responses responses) {
+        Map<UUID, PingData> known = localResponses.computeIfAbsent(clusterName, name -> new HashMap<>());
+        synchronized (known) {
+            VersionedDiscoveryStore.Changes<UUID, Tuple<PhysicalAddress, byte[]>> changes = readChanges(clusterName);
+            if (!changes.isEmpty()) {
+                if (changes.isFullResync()) {
+                    known.clear();
+                }
+                known.keySet().removeAll(changes.getRemoved());
+                for (Map.Entry<UUID, Tuple<PhysicalAddress, byte[]>> entry : changes.getUpdated().entrySet()) {
+                    known.put(entry.getKey(), new PingData(entry.getKey(), true, entry.getValue().getVal1()));
+                }
+            }
+            for (PingData data : known.values()) {
+                if (members == null || members.contains(data.getAddress())) {
+                    responses.addResponse(data, true);
                 }
             }
-        } catch (Exception e) {
-            log.error("Failed to discover ECS IPs", e);
         }
     }
 
-    @Override
-    protected Map<UUID, Tuple<PhysicalAddress, byte[]>> read(String clustername) {
-        return new HashMap<>(memoryStore);
-    }
-
     @Override
     protected void write(String clustername, UUID logical_addr, PhysicalAddress phys_addr, byte[] data) {
-        memoryStore.put(logical_addr, new Tuple<>(phys_addr, data));
+        if (sharedRegistry != null) {
+            try {
+                sharedRegistry.write(clustername, logical_addr, phys_addr, data);
+                store(clustername).remove(logical_addr);  // In case an earlier write had to fall back
+                return;
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                // Not an IP address, too large for a slot, or no free slot: only this JVM will see the member
+                log.warn("Could not share " + logical_addr + " through " + registryFile + ", keeping it in memory: " + e.getMessage());
+            }
+        }
+        store(clustername).put(logical_addr, new Tuple<>(phys_addr, data));
     }
+    // Built on the first readAll and reused; creating them per call meant new SDK clients every discovery round
+    private synchronized SharedDiscoveryCache.ServiceTasks serviceTasks() throws Exception {
+        if (serviceTasks == null) {
+            AwsClientRegistry clients = AwsClientRegistry.shared();
+            String clusterArn = TaskMetadataClient.shared().get().getCluster();
+            String serviceName = TaskMetadataClient.shared().getServiceName(clients.ecs());
+            if (serviceName == null) {
+                throw new IllegalStateException("Could not determine service name from task tags");
+            }
+            serviceTasks = SharedDiscoveryCache.forService(clusterArn, serviceName,
+                    () -> new ECSTaskDiscoveryEngine(clients.ecs(), clusterArn, serviceName, 4));
+            eniResolver = new EniAddressResolver(clients.ec2());
+        }
+        return serviceTasks;
+    }
+
     @Override
 public void readAll(List<Address> members, String clusterName, Responses responses) {
     log.debug("ECSPING: Reading all peers for cluster {}", clusterName);
+    if (!isEcs) {
+        readLocal(members, clusterName, responses);
+        return;
+    }
 
     try {
-        ECSNodeIPResolver resolver = new ECSNodeIPResolver();
-        List<String> ips = resolver.getPrivateIpsOfServiceTasks(); // Step 1: Get ECS peer IPs
+        List<Task> tasks = new ArrayList<>(serviceTasks().get().getTasks().values());
+        Collection<String> ips = eniResolver.resolve(tasks).values(); // Step 1: Get ECS peer IPs
 
         for (String ip : ips) {
             // Step 2: Create address
@@ -221,12 +233,18 @@ public void readAll(List<Address> members, String clusterName, Responses respons
 
     @Override
     protected void remove(String clustername, UUID addr) {
-        memoryStore.remove(addr);
+        if (sharedRegistry != null) {
+            sharedRegistry.remove(addr);
+        }
+        store(clustername).remove(addr);
     }
 
     @Override
     protected void clear(String clustername) {
-        memoryStore.clear();
+        if (sharedRegistry != null) {
+            sharedRegistry.clear(clustername);
+        }
+        store(clustername).clear();
     }
 
     @Override
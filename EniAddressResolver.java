@@ -0,0 +1,142 @@
+package com.example.jgroups.ecs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.ec2.Ec2AsyncClient;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.NetworkInterface;
+import software.amazon.awssdk.services.ecs.model.Attachment;
+import software.amazon.awssdk.services.ecs.model.KeyValuePair;
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Resolves awsvpc task IPs with as few EC2 calls as possible. The IP is read from the task's
+ * ENI attachment details when ECS reports it; otherwise the ENI id is looked up in a cache
+ * and only ENIs never seen before are sent to DescribeNetworkInterfaces, in batches. The
+ * blocking and the async variant share the cache.
+ */
+public class EniAddressResolver implements TaskAddressResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(EniAddressResolver.class);
+
+    private static final int DESCRIBE_BATCH_SIZE = 100;
+    private static final int MAX_CACHED_ENIS = 4096;
+
+    private final Ec2Client ec2Client;
+    private final Supplier<Ec2AsyncClient> ec2AsyncClient;  // Only asked for on the first resolveAsync(); null if unused
+
+    // ENI id to private IP, evicting the least recently used ENIs
+    private final Map<String, String> ipsByEni = Collections.synchronizedMap(
+            new LinkedHashMap<String, String>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > MAX_CACHED_ENIS;
+                }
+            });
+
+    public EniAddressResolver(Ec2Client ec2Client) {
+        this(ec2Client, null);
+    }
+
+    public EniAddressResolver(Ec2Client ec2Client, Supplier<Ec2AsyncClient> ec2AsyncClient) {
+        this.ec2Client = ec2Client;
+        this.ec2AsyncClient = ec2AsyncClient;
+    }
+
+    @Override
+    public Map<String, String> resolve(List<Task> tasks) {
+        Map<String, String> addresses = new HashMap<>();
+        Map<String, String> eniIdsByArn = new HashMap<>();
+        List<String> unseen = collect(tasks, addresses, eniIdsByArn);
+        for (int i = 0; i < unseen.size(); i += DESCRIBE_BATCH_SIZE) {
+            describe(unseen.subList(i, Math.min(i + DESCRIBE_BATCH_SIZE, unseen.size())));
+        }
+        return complete(addresses, eniIdsByArn);
+    }
+
+    /**
+     * Non-blocking {@link #resolve}: the batches of unseen ENIs are described concurrently on
+     * the async EC2 client.
+     */
+    public CompletableFuture<Map<String, String>> resolveAsync(List<Task> tasks) {
+        if (ec2AsyncClient == null) {
+            throw new IllegalStateException("No async EC2 client configured");
+        }
+        Map<String, String> addresses = new HashMap<>();
+        Map<String, String> eniIdsByArn = new HashMap<>();
+        List<String> unseen = collect(tasks, addresses, eniIdsByArn);
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (int i = 0; i < unseen.size(); i += DESCRIBE_BATCH_SIZE) {
+            List<String> batch = new ArrayList<>(unseen.subList(i, Math.min(i + DESCRIBE_BATCH_SIZE, unseen.size())));
+            log.debug("Describing {} network interfaces", batch.size());
+            batches.add(DiscoveryMetrics.shared().recordAsync(DiscoveryMetrics.DESCRIBE_NETWORK_INTERFACES,
+                    () -> ec2AsyncClient.get().describeNetworkInterfaces(r -> r.networkInterfaceIds(batch)))
+                    .thenAccept(response -> cache(response.networkInterfaces())));
+        }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> complete(addresses, eniIdsByArn));
+    }
+
+    // Fills addresses with the IPs the tasks report and eniIdsByArn with the others; returns the ENIs not cached yet
+    private List<String> collect(List<Task> tasks, Map<String, String> addresses, Map<String, String> eniIdsByArn) {
+        for (Task task : tasks) {
+            String ip = ECSTaskDiscoveryEngine.privateIp(task);
+            String eniId = networkInterfaceId(task);
+            if (ip != null) {
+                addresses.put(task.taskArn(), ip);
+                if (eniId != null) {
+                    ipsByEni.put(eniId, ip);
+                }
+            } else if (eniId != null) {
+                eniIdsByArn.put(task.taskArn(), eniId);
+            }
+        }
+
+        List<String> unseen = new ArrayList<>();
+        for (String eniId : new HashSet<>(eniIdsByArn.values())) {
+            if (!ipsByEni.containsKey(eniId)) {
+                unseen.add(eniId);
+            }
+        }
+        return unseen;
+    }
+
+    private Map<String, String> complete(Map<String, String> addresses, Map<String, String> eniIdsByArn) {
+        eniIdsByArn.forEach((arn, eniId) -> {
+            String ip = ipsByEni.get(eniId);
+            if (ip != null) {
+                addresses.put(arn, ip);
+            }
+        });
+        return addresses;
+    }
+
+    private void describe(List<String> eniIds) {
+        log.debug("Describing {} network interfaces", eniIds.size());
+        cache(DiscoveryMetrics.shared().record(DiscoveryMetrics.DESCRIBE_NETWORK_INTERFACES,
+                () -> ec2Client.describeNetworkInterfaces(r -> r.networkInterfaceIds(eniIds))).networkInterfaces());
+    }
+
+    private void cache(List<NetworkInterface> enis) {
+        for (NetworkInterface eni : enis) {
+            if (eni.privateIpAddress() != null) {
+                ipsByEni.put(eni.networkInterfaceId(), eni.privateIpAddress());
+            }
+        }
+    }
+
+    private static String networkInterfaceId(Task task) {
+        for (Attachment attachment : task.attachments()) {
+            for (KeyValuePair detail : attachment.details()) {
+                if ("networkInterfaceId".equals(detail.name())) {
+                    return detail.value();
+                }
+            }
+        }
+        return null;
+    }
+}
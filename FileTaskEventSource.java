@@ -0,0 +1,97 @@
+package com.example.jgroups.ecs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Tails a local file of newline-delimited task state change events. Used to replay
+ * captured events offline.
+ */
+public class FileTaskEventSource implements TaskEventSource {
+
+    private static final Logger log = LoggerFactory.getLogger(FileTaskEventSource.class);
+    private static final long POLL_MILLIS = 200;
+    private static final int MAX_READ_BYTES = 1 << 20;  // Per poll; events are a few KB each
+
+    private final File file;
+    private volatile Thread reader;
+
+    public FileTaskEventSource(String path) {
+        this.file = new File(path);
+    }
+
+    @Override
+    public void start(Consumer<TaskStateChangeEvent> listener) {
+        reader = new Thread(() -> tail(listener), "ECS-EventFile");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void tail(Consumer<TaskStateChangeEvent> listener) {
+        long position = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (file.length() > position) {
+                    position = readLines(position, listener);
+                } else if (file.length() < position) {
+                    position = 0;  // Truncated or replaced, start over
+                }
+                Thread.sleep(POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.error("Failed to read task events from {}", file, e);
+            }
+        }
+    }
+
+    // Dispatches the complete lines after position and returns the offset just past the last '\n'.
+    // A line still being written is left for the next poll, once its newline has arrived.
+    private long readLines(long position, Consumer<TaskStateChangeEvent> listener) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(position);
+            byte[] bytes = new byte[(int) Math.min(in.length() - position, MAX_READ_BYTES)];
+            in.readFully(bytes);
+            int start = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == '\n') {
+                    int end = i > start && bytes[i - 1] == '\r' ? i - 1 : i;
+                    dispatch(new String(bytes, start, end - start, StandardCharsets.UTF_8), listener);
+                    start = i + 1;
+                }
+            }
+            if (start == 0 && bytes.length == MAX_READ_BYTES) {
+                log.warn("Skipping a task event line in {} longer than {} bytes", file, MAX_READ_BYTES);
+                return position + bytes.length;
+            }
+            return position + start;
+        }
+    }
+
+    static void dispatch(String line, Consumer<TaskStateChangeEvent> listener) {
+        if (line.isBlank()) {
+            return;
+        }
+        try {
+            TaskStateChangeEvent event = TaskStateChangeEvent.parse(line);
+            if (event != null) {
+                listener.accept(event);
+            }
+        } catch (Exception e) {
+            log.warn("Ignoring malformed task event: {}", line, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (reader != null) {
+            reader.interrupt();
+        }
+    }
+}
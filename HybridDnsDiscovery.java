@@ -0,0 +1,157 @@
+package com.example.jgroups.ecs;
+
+import com.example.jgroups.ecs.AdaptiveRefreshScheduler.Outcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Combines cheap, frequent DNS lookups (Cloud Map / Route 53) with a slower ECS API
+ * reconciliation. DNS gives the candidate list on the hot path; each reconciliation lists the
+ * running tasks and corrects it: IPs DNS still publishes for stopped tasks are pruned, and
+ * running tasks DNS has not published yet are added. Between reconciliations DNS changes are
+ * trusted when they are newer than the last ECS listing, so a task registered or deregistered
+ * after ECS was asked is not overruled by the older listing.
+ *
+ * Changes to the resulting member set are published to the subscribed {@link DiscoveryListener}s.
+ */
+public class HybridDnsDiscovery {
+
+    private static final Logger log = LoggerFactory.getLogger(HybridDnsDiscovery.class);
+
+    private final DnsTaskResolver dns;
+    private final MultiServiceDiscovery ecs;
+    private final DiscoveryPublisher publisher = new DiscoveryPublisher();
+
+    // Guarded by this
+    private final Map<String, Long> dnsFirstSeen = new HashMap<>();  // IPs DNS publishes now -> when first seen
+    private final Map<String, Long> dnsGoneAt = new HashMap<>();  // IPs DNS stopped publishing -> when
+    private Set<String> ecsRunning;  // Null before the first reconciliation
+    private long ecsAsOf;  // Fetch time of the oldest ECS snapshot the last reconciliation used
+
+    private volatile int staleInDns;  // Last reconciliation: published by DNS but not running
+    private volatile int missingFromDns;  // Last reconciliation: running but not published by DNS
+    private volatile long dnsLookups;
+    private volatile long reconciliations;
+
+    public HybridDnsDiscovery(DnsTaskResolver dns, MultiServiceDiscovery ecs) {
+        this.dns = dns;
+        this.ecs = ecs;
+    }
+
+    /**
+     * The hot path: one DNS lookup, no ECS calls.
+     */
+    public Outcome refreshDns() {
+        Set<String> published;
+        try {
+            published = dns.resolve();
+        } catch (RuntimeException e) {
+            log.warn("DNS lookup failed, keeping the current members: {}", e.getMessage());
+            return Outcome.FAILED;
+        }
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            dnsLookups++;
+            for (String ip : dnsFirstSeen.keySet()) {
+                if (!published.contains(ip)) {
+                    dnsGoneAt.put(ip, now);
+                }
+            }
+            dnsFirstSeen.keySet().retainAll(published);
+            for (String ip : published) {
+                dnsFirstSeen.putIfAbsent(ip, now);
+                dnsGoneAt.remove(ip);
+            }
+            return publish();
+        }
+    }
+
+    /**
+     * Lists the running tasks of every ECS source and corrects the DNS candidates with them.
+     */
+    public Outcome reconcile() {
+        Set<String> running;
+        try {
+            running = ecs.fetchAll();
+        } catch (RuntimeException e) {
+            return AdaptiveRefreshScheduler.isThrottling(e) ? Outcome.THROTTLED : Outcome.FAILED;
+        }
+        long asOf = ecs.getOldestFetchedAt();
+        synchronized (this) {
+            reconciliations++;
+            ecsRunning = running;
+            ecsAsOf = asOf;
+            dnsGoneAt.values().removeIf(goneAt -> goneAt <= asOf);  // ECS has the final word on those now
+
+            int stale = 0;
+            for (String ip : dnsFirstSeen.keySet()) {
+                stale += running.contains(ip) ? 0 : 1;
+            }
+            int missing = 0;
+            for (String ip : running) {
+                missing += dnsFirstSeen.containsKey(ip) ? 0 : 1;
+            }
+            staleInDns = stale;
+            missingFromDns = missing;
+            if (stale > 0 || missing > 0) {
+                log.debug("Reconciled DNS with ECS: {} stale in DNS, {} not yet published", stale, missing);
+            }
+            return publish();
+        }
+    }
+
+    // Holding the lock
+    private Outcome publish() {
+        DiscoveryDelta delta = DiscoveryDelta.between(publisher.getMembers(), members());
+        publisher.publish(delta);
+        return delta.isEmpty() ? Outcome.UNCHANGED : Outcome.CHANGED;
+    }
+
+    private Set<String> members() {
+        if (ecsRunning == null) {
+            return new HashSet<>(dnsFirstSeen.keySet());
+        }
+        Set<String> members = new HashSet<>();
+        for (String ip : ecsRunning) {
+            Long goneAt = dnsGoneAt.get(ip);
+            if (goneAt == null || goneAt <= ecsAsOf) {
+                members.add(ip);
+            }
+        }
+        for (Map.Entry<String, Long> entry : dnsFirstSeen.entrySet()) {
+            if (entry.getValue() > ecsAsOf) {
+                members.add(entry.getKey());  // Published after ECS was asked; trusted until the next reconciliation
+            }
+        }
+        return members;
+    }
+
+    public DiscoveryListener.Subscription subscribe(DiscoveryListener listener) {
+        return publisher.subscribe(listener);
+    }
+
+    public long getGeneration() {
+        return publisher.getGeneration();
+    }
+
+    public Set<String> addresses() {
+        return publisher.getMembers();
+    }
+
+    public int getStaleInDns() {
+        return staleInDns;
+    }
+
+    public int getMissingFromDns() {
+        return missingFromDns;
+    }
+
+    public synchronized String print() {
+        return String.format("dns %s: %d published, %d lookups%necs: %s, %d reconciliations, last: %d stale in DNS, %d not yet published%n",
+                dns.getQuery(), dnsFirstSeen.size(), dnsLookups,
+                ecsRunning != null ? ecsRunning.size() + " running" : "not reconciled yet",
+                reconciliations, staleInDns, missingFromDns);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.jgroups.ecs;
+
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a task ARN to IP map for one ECS service. Each refresh reads the running tasks from
+ * {@link SharedDiscoveryCache}, resolves addresses only for ARNs that were not in the
+ * previous result and drops ARNs that are no longer listed. At steady state a refresh costs
+ * the ListTasks pages and nothing else. Every non-empty delta, from a refresh or an event,
+ * is also published to the subscribed {@link DiscoveryListener}s.
+ */
+public class IncrementalTaskDiscovery {
+
+    private final SharedDiscoveryCache.ServiceTasks serviceTasks;
+    private final TaskAddressResolver resolver;
+    private final long maxAgeMillis;
+    private final Map<String, String> addressesByArn = new ConcurrentHashMap<>();
+    private final DiscoveryPublisher publisher = new DiscoveryPublisher();
+
+    // Task ARN to the time an event last changed it; a cached snapshot older than that is not trusted for the task
+    private final Map<String, Long> eventTimes = new HashMap<>();
+
+    public IncrementalTaskDiscovery(SharedDiscoveryCache.ServiceTasks serviceTasks) {
+        this(serviceTasks, TaskAddressResolver.DIRECT, SharedDiscoveryCache.DEFAULT_TTL_MILLIS);
+    }
+
+    public IncrementalTaskDiscovery(SharedDiscoveryCache.ServiceTasks serviceTasks, TaskAddressResolver resolver,
+                                    long maxAgeMillis) {
+        this.serviceTasks = serviceTasks;
+        this.resolver = resolver;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public synchronized DiscoveryDelta refresh() {
+        Set<String> before = addresses();
+        SharedDiscoveryCache.Snapshot snapshot = serviceTasks.get(maxAgeMillis);
+        Map<String, Task> running = snapshot.getTasks();
+
+        eventTimes.values().removeIf(time -> time < snapshot.getFetchedAt());
+        addressesByArn.keySet().removeIf(arn -> !running.containsKey(arn) && !eventTimes.containsKey(arn));
+
+        List<Task> unseen = new ArrayList<>();
+        for (Task task : running.values()) {
+            if (!addressesByArn.containsKey(task.taskArn()) && !eventTimes.containsKey(task.taskArn())) {
+                unseen.add(task);
+            }
+        }
+        if (!unseen.isEmpty()) {
+            addressesByArn.putAll(resolver.resolve(unseen));
+        }
+
+        return publish(DiscoveryDelta.between(before, addresses()));
+    }
+
+    /**
+     * Applies a task state change event without calling ECS. Tasks that reach RUNNING are
+     * added and tasks that are stopping are dropped; the next refresh reconciles anything missed.
+     */
+    public synchronized DiscoveryDelta apply(TaskStateChangeEvent event) {
+        Set<String> before = addresses();
+        if (event.isStopping()) {
+            addressesByArn.remove(event.getTaskArn());
+        } else if (event.isRunning() && event.getPrivateIp() != null) {
+            addressesByArn.put(event.getTaskArn(), event.getPrivateIp());
+        } else {
+            return DiscoveryDelta.EMPTY;
+        }
+        eventTimes.put(event.getTaskArn(), System.currentTimeMillis());
+        return publish(DiscoveryDelta.between(before, addresses()));
+    }
+
+    private DiscoveryDelta publish(DiscoveryDelta delta) {
+        publisher.publish(delta);
+        return delta;
+    }
+
+    public DiscoveryListener.Subscription subscribe(DiscoveryListener listener) {
+        return publisher.subscribe(listener);
+    }
+
+    public long getGeneration() {
+        return publisher.getGeneration();
+    }
+
+    public Set<String> addresses() {
+        return new HashSet<>(addressesByArn.values());
+    }
+}
@@ -1,25 +1,116 @@
+import com.example.jgroups.ecs.DiscoveryDelta;
+import com.example.jgroups.ecs.DiscoveryMetrics;
 import org.jgroups.JChannel;
+import org.jgroups.PhysicalAddress;
+import org.jgroups.protocols.Discovery;
+import org.jgroups.protocols.MERGE3;
+import org.jgroups.protocols.TCPPING;
+import org.jgroups.stack.IpAddress;
+import org.jgroups.stack.ProtocolStack;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @Service
 public class JGroupsClusterUpdater {
+    private static final Logger log = LoggerFactory.getLogger(JGroupsClusterUpdater.class);
+
     private final ECSTaskIPFetcher ecsTaskIPFetcher;
     private final JChannel jChannel;
+    private Set<String> knownIps = Collections.emptySet();
 
     public JGroupsClusterUpdater(ECSTaskIPFetcher ecsTaskIPFetcher, JChannel jChannel) {
         this.ecsTaskIPFetcher = ecsTaskIPFetcher;
         this.jChannel = jChannel;
+        ecsTaskIPFetcher.subscribe(this::onMembersChanged);
     }
 
     @Scheduled(fixedRate = 30000) // Runs every 30 seconds
     public void updateClusterMembers() {
-        List<String> privateIps = ecsTaskIPFetcher.getTaskPrivateIps();
-        if (!privateIps.isEmpty()) {
-            String initialHosts = String.join(",", privateIps);
-            System.setProperty("JGROUPS_INITIAL_HOSTS", initialHosts);
-            System.out.println("Updated JGroups Cluster: " + initialHosts);
+        // Runs off the scheduler thread; only the tasks that changed come back, through onMembersChanged
+        ecsTaskIPFetcher.refreshAsync().whenComplete((ignored, error) -> {
+            if (error != null) {
+                log.warn("Failed to fetch ECS task IPs: {}", error.getMessage());
+                DiscoveryMetrics.shared().recordFailure(DiscoveryMetrics.CLIENT, error);
+            }
+        });
+    }
+
+    private synchronized void onMembersChanged(long generation, DiscoveryDelta delta) {
+        Set<String> ips = new HashSet<>(knownIps);
+        ips.removeAll(delta.getRemoved());
+        ips.addAll(delta.getAdded());
+        knownIps = ips;
+        if (!ips.isEmpty()) {
+            System.setProperty("JGROUPS_INITIAL_HOSTS", String.join(",", ips));  // For channels created later
+        }
+        log.debug("Updated JGroups cluster (generation {}): {} added, {} removed, {} members", generation,
+                delta.getAdded().size(), delta.getRemoved().size(), ips.size());
+        applyToRunningChannel(delta);
+    }
+
+    // The system property is only read when a stack is built; a running channel needs the changes pushed in
+    private void applyToRunningChannel(DiscoveryDelta delta) {
+        ProtocolStack stack = jChannel.getProtocolStack();
+        if (stack == null) {
+            return;
+        }
+        Discovery discovery = stack.findProtocol(Discovery.class);
+        if (discovery instanceof ECS_PING) {
+            ((ECS_PING) discovery).removeMembers(delta.getRemoved());
+            ((ECS_PING) discovery).addMembers(delta.getAdded());
+        } else if (discovery instanceof com.example.jgroups.protocols.ECS_PING) {
+            ((com.example.jgroups.protocols.ECS_PING) discovery).removeMembers(delta.getRemoved());
+            ((com.example.jgroups.protocols.ECS_PING) discovery).addMembers(delta.getAdded());
+        } else if (discovery instanceof TCPPING) {
+            updateInitialHosts((TCPPING) discovery, delta, stack.getTransport().getBindPort());
+        }
+
+        if (!delta.getAdded().isEmpty() && jChannel.isConnected()) {
+            triggerMerge(stack, discovery);
+        }
+    }
+
+    private void updateInitialHosts(TCPPING tcpPing, DiscoveryDelta delta, int port) {
+        List<PhysicalAddress> hosts = new ArrayList<>(tcpPing.getInitialHosts());
+        hosts.removeAll(toAddresses(delta.getRemoved(), port));
+        for (PhysicalAddress addr : toAddresses(delta.getAdded(), port)) {
+            if (!hosts.contains(addr)) {
+                hosts.add(addr);
+            }
+        }
+        tcpPing.setInitialHosts2(hosts);
+    }
+
+    private List<PhysicalAddress> toAddresses(Collection<String> ips, int port) {
+        List<PhysicalAddress> addresses = new ArrayList<>(ips.size());
+        for (String ip : ips) {
+            try {
+                addresses.add(new IpAddress(InetAddress.getByName(ip), port));
+            } catch (Exception e) {
+                log.warn("Ignoring invalid ECS task IP {}: {}", ip, e.getMessage());
+                DiscoveryMetrics.shared().recordFailure(DiscoveryMetrics.CLIENT, e);
+            }
+        }
+        return addresses;
+    }
+
+    // New peers are probably running their own singleton cluster; have them found now rather than at the next MERGE3 interval
+    private void triggerMerge(ProtocolStack stack, Discovery discovery) {
+        MERGE3 merge = stack.findProtocol(MERGE3.class);
+        if (merge != null) {
+            merge.sendInfo();
+        } else if (discovery != null) {
+            discovery.findMembers(null, false, true, 0);
         }
     }
 }
@@ -0,0 +1,320 @@
+package com.example.jgroups.ping;
+
+import org.jgroups.PhysicalAddress;
+import org.jgroups.stack.IpAddress;
+import org.jgroups.util.Tuple;
+import org.jgroups.util.UUID;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.InetAddress;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discovery registry shared by the JVMs of one host through a memory-mapped file. The file is
+ * a header followed by fixed-size slots; each member claims one slot by CAS on its owner word
+ * and publishes its address and data under a seqlock, so readers in other processes never see
+ * a half-written slot and never take a lock. Owners refresh a heartbeat timestamp; slots whose
+ * heartbeat is older than the expiry are ignored by readers and may be reclaimed by writers.
+ */
+public class MappedDiscoveryRegistry implements AutoCloseable {
+
+    private static final int MAGIC = 0x4A474D52;  // "JGMR"
+    private static final int HEADER_SIZE = 64;
+    public static final int SLOT_SIZE = 512;
+
+    // Slot layout; longs are 8-byte aligned so they can be accessed atomically
+    private static final int SEQ = 0;
+    private static final int OWNER = 8;
+    private static final int HEARTBEAT = 16;
+    private static final int UUID_MSB = 24;
+    private static final int UUID_LSB = 32;
+    private static final int PORT = 40;
+    private static final int ADDR_LEN = 44;
+    private static final int ADDR = 45;           // Up to 16 bytes (IPv6)
+    private static final int CLUSTER_LEN = 62;
+    private static final int CLUSTER = 64;        // Up to 64 bytes of UTF-8
+    private static final int MAX_CLUSTER = 64;
+    private static final int DATA_LEN = 128;
+    private static final int DATA = 132;
+    public static final int MAX_DATA = SLOT_SIZE - DATA;
+
+    private static final int MAX_READ_ATTEMPTS = 64;
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+    private final long expiryMillis;
+    private final long token;
+    private final Map<UUID, Integer> ownedSlots = new HashMap<>();
+    private final ScheduledExecutorService heartbeats;
+
+    public MappedDiscoveryRegistry(String path, int slots, long expiryMillis) throws IOException {
+        this.expiryMillis = expiryMillis;
+        this.token = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        this.channel = file.getChannel();
+        long size = HEADER_SIZE + (long) slots * SLOT_SIZE;
+        if (channel.size() < size) {
+            file.setLength(size);  // Zero-filled; every slot starts out free
+        }
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        this.buffer.order(ByteOrder.nativeOrder());
+
+        // The first JVM formats the header; later ones adopt its slot count
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.putInt(4, slots);
+            buffer.putInt(8, SLOT_SIZE);
+            buffer.putInt(0, MAGIC);
+        }
+        if (buffer.getInt(8) != SLOT_SIZE) {
+            throw new IOException(path + " uses slots of " + buffer.getInt(8) + " bytes, expected " + SLOT_SIZE);
+        }
+        this.slots = Math.min(buffer.getInt(4), (int) ((buffer.capacity() - HEADER_SIZE) / SLOT_SIZE));
+
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ECSOrLocalPing-Heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = Math.max(1, expiryMillis / 3);
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private static int base(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private long getLong(int offset) {
+        return (long) LONGS.getVolatile(buffer, offset);
+    }
+
+    /**
+     * Publishes (or updates) the entry of a member in its own slot.
+     */
+    public synchronized void write(String cluster, UUID member, PhysicalAddress physAddr, byte[] data) {
+        if (!(physAddr instanceof IpAddress)) {
+            throw new IllegalArgumentException("Only IP addresses can be shared: " + physAddr);
+        }
+        byte[] clusterBytes = cluster.getBytes(StandardCharsets.UTF_8);
+        if (clusterBytes.length > MAX_CLUSTER) {
+            throw new IllegalArgumentException("Cluster name longer than " + MAX_CLUSTER + " bytes: " + cluster);
+        }
+        if (data != null && data.length > MAX_DATA) {
+            throw new IllegalArgumentException("Discovery data of " + data.length + " bytes exceeds the slot limit of " + MAX_DATA);
+        }
+
+        Integer slot = ownedSlots.get(member);
+        if (slot == null || getLong(base(slot) + OWNER) != token) {  // Cleared or reclaimed by another JVM
+            slot = claimSlot();
+            ownedSlots.put(member, slot);
+        }
+
+        IpAddress ipAddress = (IpAddress) physAddr;
+        byte[] addr = ipAddress.getIpAddress().getAddress();
+        int base = base(slot);
+
+        long seq = beginWrite(base);
+        buffer.putLong(base + UUID_MSB, member.getMostSignificantBits());
+        buffer.putLong(base + UUID_LSB, member.getLeastSignificantBits());
+        buffer.putInt(base + PORT, ipAddress.getPort());
+        buffer.put(base + ADDR_LEN, (byte) addr.length);
+        putBytes(base + ADDR, addr);
+        buffer.putShort(base + CLUSTER_LEN, (short) clusterBytes.length);
+        putBytes(base + CLUSTER, clusterBytes);
+        buffer.putInt(base + DATA_LEN, data == null ? -1 : data.length);
+        if (data != null) {
+            putBytes(base + DATA, data);
+        }
+        LONGS.setVolatile(buffer, base + HEARTBEAT, System.currentTimeMillis());
+        endWrite(base, seq);
+    }
+
+    // Takes a free slot, or one whose owner stopped heartbeating
+    private int claimSlot() {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < slots; i++) {
+            int base = base(i);
+            long owner = getLong(base + OWNER);
+            boolean expired = owner != 0 && now - getLong(base + HEARTBEAT) > expiryMillis;
+            if ((owner == 0 || expired) && LONGS.compareAndSet(buffer, base + OWNER, owner, token)) {
+                // An owner that died between beginWrite and endWrite left the sequence odd
+                long seq = getLong(base + SEQ);
+                if ((seq & 1) != 0) {
+                    LONGS.setVolatile(buffer, base + SEQ, seq + 1);
+                }
+                LONGS.setVolatile(buffer, base + HEARTBEAT, now);
+                return i;
+            }
+        }
+        throw new IllegalStateException("All " + slots + " registry slots are in use");
+    }
+
+    // Makes the sequence odd, which tells readers the slot is being written. An odd sequence on
+    // a slot whose heartbeat expired belongs to a writer that died mid-write; it is taken over.
+    private long beginWrite(int base) {
+        while (true) {
+            long seq = getLong(base + SEQ);
+            if ((seq & 1) == 0 && LONGS.compareAndSet(buffer, base + SEQ, seq, seq + 1)) {
+                return seq + 1;
+            }
+            if ((seq & 1) != 0 && isExpired(base) && LONGS.compareAndSet(buffer, base + SEQ, seq, seq + 2)) {
+                return seq + 2;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private void endWrite(int base, long seq) {
+        LONGS.setVolatile(buffer, base + SEQ, seq + 1);
+    }
+
+    private boolean isExpired(int base) {
+        return System.currentTimeMillis() - getLong(base + HEARTBEAT) > expiryMillis;
+    }
+
+    /**
+     * Returns the live entries of the given cluster from every JVM sharing the file.
+     */
+    public Map<UUID, Tuple<PhysicalAddress, byte[]>> read(String cluster) {
+        byte[] clusterBytes = cluster.getBytes(StandardCharsets.UTF_8);
+        long now = System.currentTimeMillis();
+        Map<UUID, Tuple<PhysicalAddress, byte[]>> entries = new HashMap<>();
+
+        for (int i = 0; i < slots; i++) {
+            int base = base(i);
+            if (getLong(base + OWNER) == 0) {
+                continue;
+            }
+            for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+                long seq = getLong(base + SEQ);
+                if ((seq & 1) != 0) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+
+                long heartbeat = getLong(base + HEARTBEAT);
+                boolean sameCluster = buffer.getShort(base + CLUSTER_LEN) == clusterBytes.length
+                        && Arrays.equals(getBytes(base + CLUSTER, clusterBytes.length), clusterBytes);
+                UUID member = null;
+                PhysicalAddress physAddr = null;
+                byte[] data = null;
+                if (sameCluster && now - heartbeat <= expiryMillis) {
+                    member = new UUID(buffer.getLong(base + UUID_MSB), buffer.getLong(base + UUID_LSB));
+                    int addrLen = buffer.get(base + ADDR_LEN);
+                    byte[] addr = getBytes(base + ADDR, addrLen == 4 || addrLen == 16 ? addrLen : 0);
+                    int port = buffer.getInt(base + PORT);
+                    int dataLen = buffer.getInt(base + DATA_LEN);
+                    data = dataLen >= 0 && dataLen <= MAX_DATA ? getBytes(base + DATA, dataLen) : null;
+                    physAddr = toAddress(addr, port);
+                }
+
+                VarHandle.loadLoadFence();
+                if (getLong(base + SEQ) != seq) {
+                    continue;  // Written while we were reading; try again
+                }
+                if (member != null && physAddr != null) {
+                    entries.put(member, new Tuple<>(physAddr, data));
+                }
+                break;
+            }
+        }
+        return entries;
+    }
+
+    private static PhysicalAddress toAddress(byte[] addr, int port) {
+        try {
+            return new IpAddress(InetAddress.getByAddress(addr), port);
+        } catch (Exception e) {
+            return null;  // Torn read; the sequence check discards it
+        }
+    }
+
+    public synchronized void remove(UUID member) {
+        Integer slot = ownedSlots.remove(member);
+        if (slot != null) {
+            free(slot);
+        }
+    }
+
+    /**
+     * Frees every slot of the given cluster, including those of other JVMs.
+     */
+    public synchronized void clear(String cluster) {
+        byte[] clusterBytes = cluster.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < slots; i++) {
+            int base = base(i);
+            // Free slots and those of other clusters are left alone, without taking their seqlock
+            if (!ownedBy(base, clusterBytes)) {
+                continue;
+            }
+            long seq = beginWrite(base);
+            if (ownedBy(base, clusterBytes)) {
+                LONGS.setVolatile(buffer, base + OWNER, 0L);
+            }
+            endWrite(base, seq);
+        }
+        ownedSlots.values().removeIf(slot -> getLong(base(slot) + OWNER) != token);
+    }
+
+    private boolean ownedBy(int base, byte[] clusterBytes) {
+        return getLong(base + OWNER) != 0
+                && buffer.getShort(base + CLUSTER_LEN) == clusterBytes.length
+                && Arrays.equals(getBytes(base + CLUSTER, clusterBytes.length), clusterBytes);
+    }
+
+    private void free(int slot) {
+        int base = base(slot);
+        long seq = beginWrite(base);
+        LONGS.compareAndSet(buffer, base + OWNER, token, 0L);
+        endWrite(base, seq);
+    }
+
+    private synchronized void heartbeat() {
+        long now = System.currentTimeMillis();
+        for (int slot : ownedSlots.values()) {
+            LONGS.setVolatile(buffer, base(slot) + HEARTBEAT, now);
+        }
+    }
+
+    private void putBytes(int offset, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.put(offset + i, bytes[i]);
+        }
+    }
+
+    private byte[] getBytes(int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return bytes;
+    }
+
+    @Override
+    public synchronized void close() {
+        heartbeats.shutdownNow();
+        for (int slot : ownedSlots.values()) {
+            free(slot);
+        }
+        ownedSlots.clear();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.jgroups.ecs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+
+/**
+ * Last-known member addresses kept in a small local file, one per line, so a restarted node
+ * can send its first join traffic to the previous members without waiting for the ECS APIs.
+ * Files older than the maximum age are ignored. Writes go through a temporary file and an
+ * atomic rename, so a crash never leaves a half-written snapshot behind.
+ */
+public class MembershipSnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(MembershipSnapshot.class);
+
+    private final Path file;
+    private final long maxAgeMillis;
+    private Set<String> lastSaved = Collections.emptySet();
+
+    public MembershipSnapshot(Path file, long maxAgeMillis) {
+        this.file = file;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    // A per-service file in the temp directory
+    public static Path defaultPath(String clusterName, String serviceName) {
+        String name = (clusterName + "-" + serviceName).replaceAll("[^A-Za-z0-9._-]", "_");
+        return Paths.get(System.getProperty("java.io.tmpdir"), "jgroups-ecs-" + name + ".members");
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the saved addresses, or an empty list if there is no snapshot or it is too old.
+     */
+    public synchronized List<String> load() {
+        try {
+            if (!Files.isRegularFile(file)) {
+                return Collections.emptyList();
+            }
+            FileTime modified = Files.getLastModifiedTime(file);
+            if (System.currentTimeMillis() - modified.toMillis() > maxAgeMillis) {
+                log.debug("Ignoring membership snapshot {} older than {} ms", file, maxAgeMillis);
+                return Collections.emptyList();
+            }
+            List<String> addresses = new ArrayList<>();
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    addresses.add(line);
+                }
+            }
+            lastSaved = new HashSet<>(addresses);
+            return addresses;
+        } catch (IOException e) {
+            log.warn("Could not read membership snapshot {}", file, e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Replaces the snapshot with the given addresses. If they are unchanged only the modification
+     * time is advanced, so a snapshot confirmed by every refresh never ages out.
+     */
+    public synchronized void save(Collection<String> addresses) {
+        Set<String> current = new LinkedHashSet<>(addresses);
+        if (current.equals(lastSaved) && touch()) {
+            return;
+        }
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            if (dir != null) {
+                Files.createDirectories(dir);
+            }
+            List<String> lines = new ArrayList<>(current.size() + 1);
+            lines.add("# Last known members, written " + new Date());
+            lines.addAll(current);
+            Path tmp = Files.createTempFile(dir != null ? dir : new File(".").toPath(), file.getFileName().toString(), ".tmp");
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            lastSaved = current;
+        } catch (IOException e) {
+            log.warn("Could not write membership snapshot {}", file, e);
+        }
+    }
+
+    // False if the file is gone or cannot be touched, in which case it is rewritten
+    private boolean touch() {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.jgroups.ecs;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import org.HdrHistogram.Histogram;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Publishes discovery and ping statistics as Micrometer meters on the global registry.
+ * Micrometer is optional (compileOnly): every method is a no-op when it is not on the
+ * classpath. Micrometer types (including the global registry) only appear in the nested
+ * Binder, which is never loaded in that case; the outer class must not mention any of them,
+ * not even in a call to Binder, or loading it already fails.
+ */
+public final class MicrometerDiscoveryMetrics {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final boolean available = detect();
+    private static volatile boolean sharedBound;
+
+    private MicrometerDiscoveryMetrics() {
+    }
+
+    private static boolean detect() {
+        try {
+            Class.forName("io.micrometer.core.instrument.Metrics", false, MicrometerDiscoveryMetrics.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    public static boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Registers the process-wide AWS API stage meters (calls, throttles, failures, latency
+     * percentiles per stage). Only the first call registers anything.
+     */
+    public static synchronized void bindShared() {
+        if (available && !sharedBound) {
+            Binder.registerStages(DiscoveryMetrics.shared());
+            sharedBound = true;
+        }
+    }
+
+    public static <T> void gauge(String name, String description, T target, ToDoubleFunction<T> value, String... tags) {
+        if (available) {
+            Binder.registerGauge(name, description, target, value, tags);
+        }
+    }
+
+    // Counters that only ever grow, read through a function
+    public static <T> void counter(String name, String description, T target, ToDoubleFunction<T> value, String... tags) {
+        if (available) {
+            Binder.registerCounter(name, description, target, value, tags);
+        }
+    }
+
+    /**
+     * One gauge per percentile (tag "quantile") plus one for the maximum, reading the histogram
+     * on every scrape; values are divided by {@code scale} (e.g. 1000 for micros to millis).
+     */
+    public static void histogram(String name, String description, Histogram histogram, double scale, String... tags) {
+        if (available) {
+            Binder.registerHistogram(name, description, histogram, scale, tags);
+        }
+    }
+
+    private static final class Binder {
+
+        // The outer class calls only these, whose signatures carry no Micrometer type
+        static void registerStages(DiscoveryMetrics metrics) {
+            bindStages(Metrics.globalRegistry, metrics);
+        }
+
+        static <T> void registerGauge(String name, String description, T target, ToDoubleFunction<T> value, String... tags) {
+            gauge(Metrics.globalRegistry, name, description, target, value, tags);
+        }
+
+        static <T> void registerCounter(String name, String description, T target, ToDoubleFunction<T> value, String... tags) {
+            counter(Metrics.globalRegistry, name, description, target, value, tags);
+        }
+
+        static void registerHistogram(String name, String description, Histogram histogram, double scale, String... tags) {
+            histogram(Metrics.globalRegistry, name, description, histogram, scale, tags);
+        }
+
+        static void bindStages(MeterRegistry registry, DiscoveryMetrics metrics) {
+            String[] stages = {DiscoveryMetrics.LIST_TASKS, DiscoveryMetrics.DESCRIBE_TASKS,
+                    DiscoveryMetrics.DESCRIBE_NETWORK_INTERFACES, DiscoveryMetrics.LIST_TAGS, DiscoveryMetrics.REFRESH,
+                    DiscoveryMetrics.CLIENT};
+            for (String name : stages) {
+                DiscoveryMetrics.Stage stage = metrics.stage(name);
+                counter(registry, "ecs.discovery.calls", "AWS discovery calls", stage, DiscoveryMetrics.Stage::getCalls, "stage", name);
+                counter(registry, "ecs.discovery.throttled", "Throttled AWS discovery calls", stage, DiscoveryMetrics.Stage::getThrottled, "stage", name);
+                counter(registry, "ecs.discovery.failures", "Failed AWS discovery calls", stage, DiscoveryMetrics.Stage::getFailed, "stage", name);
+                histogram(registry, "ecs.discovery.latency.ms", "AWS discovery call latency", stage.getLatencyMicros(), 1000, "stage", name);
+            }
+        }
+
+        static <T> void gauge(MeterRegistry registry, String name, String description, T target, ToDoubleFunction<T> value, String... tags) {
+            Gauge.builder(name, target, value).description(description).tags(Tags.of(tags)).register(registry);
+        }
+
+        static <T> void counter(MeterRegistry registry, String name, String description, T target, ToDoubleFunction<T> value, String... tags) {
+            FunctionCounter.builder(name, target, value).description(description).tags(Tags.of(tags)).register(registry);
+        }
+
+        static void histogram(MeterRegistry registry, String name, String description, Histogram histogram, double scale, String... tags) {
+            for (double percentile : PERCENTILES) {
+                Gauge.builder(name, histogram, h -> h.getValueAtPercentile(percentile) / scale)
+                        .description(description)
+                        .tags(Tags.of(tags).and("quantile", String.valueOf(percentile / 100)))
+                        .register(registry);
+            }
+            Gauge.builder(name + ".max", histogram, h -> h.getMaxValue() / scale)
+                    .description(description)
+                    .tags(Tags.of(tags))
+                    .register(registry);
+        }
+    }
+}
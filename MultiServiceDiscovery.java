@@ -0,0 +1,368 @@
+package com.example.jgroups.ecs;
+
+import com.example.jgroups.ecs.AdaptiveRefreshScheduler.Outcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Discovers the running tasks of several (cluster, service) sources as one member set, e.g.
+ * the blue and green services of a deployment or the client and server services of one
+ * cluster. A refresh queries all sources in parallel, so it costs one round rather than one
+ * per source. Each source keeps its own {@link IncrementalTaskDiscovery} and its own backoff:
+ * a source that fails or is throttled keeps its last known tasks and is skipped until its
+ * backoff expires, while the others carry on. The sources' IPs are merged and deduplicated,
+ * and changes to the merged set are published to the subscribed {@link DiscoveryListener}s.
+ */
+public class MultiServiceDiscovery implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MultiServiceDiscovery.class);
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+
+    /**
+     * One cluster (name or ARN) and service pair.
+     */
+    public static final class ServiceRef {
+        private final String cluster;
+        private final String service;
+
+        public ServiceRef(String cluster, String service) {
+            this.cluster = Objects.requireNonNull(cluster, "cluster");
+            this.service = Objects.requireNonNull(service, "service");
+        }
+
+        /**
+         * Parses a comma-separated list of {@code cluster/service} pairs. The service is whatever
+         * follows the last '/', so the cluster may be given as an ARN.
+         */
+        public static List<ServiceRef> parseList(String specs) {
+            List<ServiceRef> refs = new ArrayList<>();
+            for (String spec : specs.split(",")) {
+                spec = spec.trim();
+                if (spec.isEmpty()) {
+                    continue;
+                }
+                int slash = spec.lastIndexOf('/');
+                if (slash <= 0 || slash == spec.length() - 1) {
+                    throw new IllegalArgumentException("Expected cluster/service but got '" + spec + "'");
+                }
+                refs.add(new ServiceRef(spec.substring(0, slash), spec.substring(slash + 1)));
+            }
+            return refs;
+        }
+
+        public String getCluster() {
+            return cluster;
+        }
+
+        public String getService() {
+            return service;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ServiceRef && cluster.equals(((ServiceRef) o).cluster) && service.equals(((ServiceRef) o).service);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * cluster.hashCode() + service.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return cluster.substring(cluster.lastIndexOf('/') + 1) + "/" + service;
+        }
+    }
+
+    private final class Source {
+        final ServiceRef ref;
+        final SharedDiscoveryCache.ServiceTasks serviceTasks;
+        final IncrementalTaskDiscovery discovery;
+        final DiscoveryListener.Subscription subscription;
+        volatile Outcome lastOutcome;
+        volatile RuntimeException lastFailure;
+        volatile long lastSuccess;
+        volatile long backoffUntil;
+        volatile int failures;  // Consecutive; only updated by the refresh of this source
+
+        Source(ServiceRef ref, int describeConcurrency, long maxAgeMillis) {
+            this.ref = ref;
+            this.serviceTasks = SharedDiscoveryCache.forService(ref.cluster, ref.service,
+                    () -> new ECSTaskDiscoveryEngine(AwsClientRegistry.shared().ecs(), ref.cluster, ref.service, describeConcurrency));
+            this.discovery = new IncrementalTaskDiscovery(serviceTasks, TaskAddressResolver.DIRECT, maxAgeMillis);
+            this.subscription = discovery.subscribe((generation, delta) -> merge(delta));
+        }
+
+        // Null if the source is backing off and was not queried
+        Outcome refresh(long now) {
+            if (now < backoffUntil) {
+                return null;
+            }
+            try {
+                boolean changed = !discovery.refresh().isEmpty();
+                return succeeded(changed ? Outcome.CHANGED : Outcome.UNCHANGED);
+            } catch (RuntimeException e) {
+                return failed(e, now);
+            }
+        }
+
+        // Full list of this source's IPs; the last known ones if the source is failing, null if there are none
+        Set<String> fetch(long now, long maxAgeMillis) {
+            if (now >= backoffUntil) {
+                try {
+                    Set<String> ips = ipsOf(serviceTasks.get(maxAgeMillis).getTasks().values());
+                    succeeded(Outcome.UNCHANGED);
+                    return ips;
+                } catch (RuntimeException e) {
+                    failed(e, now);
+                }
+            }
+            SharedDiscoveryCache.Snapshot last = serviceTasks.peek();
+            return last != null ? ipsOf(last.getTasks().values()) : null;
+        }
+
+        private Outcome succeeded(Outcome outcome) {
+            failures = 0;
+            backoffUntil = 0;
+            lastFailure = null;
+            lastSuccess = System.currentTimeMillis();
+            return lastOutcome = outcome;
+        }
+
+        private Outcome failed(RuntimeException e, long now) {
+            failures++;
+            backoffUntil = now + Math.min(maxBackoffMillis, MIN_BACKOFF_MILLIS << Math.min(failures - 1, 16));
+            lastFailure = e;
+            boolean throttled = AdaptiveRefreshScheduler.isThrottling(e);
+            log.warn("Discovery of {} {} ({} in a row), retrying in {} ms: {}", ref, throttled ? "throttled" : "failed",
+                    failures, backoffUntil - now, e.getMessage());
+            return lastOutcome = throttled ? Outcome.THROTTLED : Outcome.FAILED;
+        }
+    }
+
+    private final List<Source> sources = new ArrayList<>();
+    private final long maxAgeMillis;
+    private final long maxBackoffMillis;
+    private final ExecutorService executor;  // Null with a single source, which is refreshed inline
+    private final Map<String, Integer> sourceCounts = new HashMap<>();  // IP -> number of sources reporting it
+    private final DiscoveryPublisher publisher = new DiscoveryPublisher();
+
+    public MultiServiceDiscovery(List<ServiceRef> refs, int describeConcurrency, long maxAgeMillis, long maxBackoffMillis) {
+        if (refs.isEmpty()) {
+            throw new IllegalArgumentException("At least one cluster/service pair is required");
+        }
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxBackoffMillis = Math.max(maxBackoffMillis, MIN_BACKOFF_MILLIS);
+        for (ServiceRef ref : new LinkedHashSet<>(refs)) {
+            sources.add(new Source(ref, describeConcurrency, maxAgeMillis));
+        }
+        if (sources.size() > 1) {
+            AtomicInteger threads = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(sources.size(), r -> {
+                Thread t = new Thread(r, "ECS-Discovery-" + threads.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Refreshes all sources that are not backing off, in parallel. The result is CHANGED if the
+     * merged set changed (a source gaining an IP another source already reports does not count),
+     * THROTTLED or FAILED only if every queried source was throttled or failed, and UNCHANGED
+     * otherwise (including when every source is backing off).
+     */
+    public Outcome refresh() {
+        long now = System.currentTimeMillis();
+        long before = publisher.getGeneration();
+        List<Outcome> outcomes = fanOut(source -> source.refresh(now));
+
+        int attempted = 0;
+        int throttled = 0;
+        int failed = 0;
+        for (Outcome outcome : outcomes) {
+            if (outcome != null) {
+                attempted++;
+                throttled += outcome == Outcome.THROTTLED ? 1 : 0;
+                failed += outcome == Outcome.FAILED ? 1 : 0;
+            }
+        }
+        if (publisher.getGeneration() != before) {
+            return Outcome.CHANGED;
+        }
+        if (attempted > 0 && throttled + failed == attempted) {
+            return throttled > 0 ? Outcome.THROTTLED : Outcome.FAILED;
+        }
+        return Outcome.UNCHANGED;
+    }
+
+    /**
+     * Lists all sources in parallel and returns the merged IPs, bypassing the incremental
+     * state. Failing sources contribute their last known tasks; if no source has any, the
+     * failure of the first source is thrown rather than returning an empty set.
+     */
+    public Set<String> fetchAll() {
+        long now = System.currentTimeMillis();
+        Set<String> ips = null;
+        for (Set<String> sourceIps : fanOut(source -> source.fetch(now, maxAgeMillis))) {
+            if (sourceIps != null) {
+                ips = ips == null ? new HashSet<>() : ips;
+                ips.addAll(sourceIps);
+            }
+        }
+        if (ips == null) {
+            RuntimeException failure = sources.get(0).lastFailure;
+            throw failure != null ? failure : new IllegalStateException("No ECS service could be listed");
+        }
+        return ips;
+    }
+
+    private <T> List<T> fanOut(Function<Source, T> call) {
+        if (executor == null) {
+            return Collections.singletonList(call.apply(sources.get(0)));
+        }
+        List<CompletableFuture<T>> calls = new ArrayList<>(sources.size());
+        for (Source source : sources) {
+            calls.add(CompletableFuture.supplyAsync(() -> call.apply(source), executor));
+        }
+        List<T> results = new ArrayList<>(calls.size());
+        for (CompletableFuture<T> result : calls) {
+            results.add(result.join());  // Sources handle their own failures
+        }
+        return results;
+    }
+
+    // Routes the event to every source it belongs to
+    public void apply(TaskStateChangeEvent event) {
+        for (Source source : sources) {
+            if (event.matches(source.ref.cluster, source.ref.service)) {
+                source.discovery.apply(event);
+            }
+        }
+    }
+
+    // Turns one source's delta into a delta of the merged set; an IP reported by two sources only leaves with both
+    private synchronized void merge(DiscoveryDelta delta) {
+        Set<String> added = new HashSet<>();
+        Set<String> removed = new HashSet<>();
+        for (String ip : delta.getRemoved()) {
+            Integer count = sourceCounts.get(ip);
+            if (count == null) {
+                continue;
+            }
+            if (count == 1) {
+                sourceCounts.remove(ip);
+                removed.add(ip);
+            } else {
+                sourceCounts.put(ip, count - 1);
+            }
+        }
+        for (String ip : delta.getAdded()) {
+            if (sourceCounts.merge(ip, 1, Integer::sum) == 1) {
+                added.add(ip);
+            }
+        }
+        publisher.publish(new DiscoveryDelta(added, removed));
+    }
+
+    public DiscoveryListener.Subscription subscribe(DiscoveryListener listener) {
+        return publisher.subscribe(listener);
+    }
+
+    public long getGeneration() {
+        return publisher.getGeneration();
+    }
+
+    public Set<String> addresses() {
+        return publisher.getMembers();
+    }
+
+    public List<ServiceRef> getServices() {
+        List<ServiceRef> refs = new ArrayList<>(sources.size());
+        for (Source source : sources) {
+            refs.add(source.ref);
+        }
+        return refs;
+    }
+
+    // Tasks of every source's last refresh, without refreshing
+    public List<Task> getKnownTasks() {
+        List<Task> tasks = new ArrayList<>();
+        for (Source source : sources) {
+            SharedDiscoveryCache.Snapshot snapshot = source.serviceTasks.peek();
+            if (snapshot != null) {
+                tasks.addAll(snapshot.getTasks().values());
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * When the oldest source snapshot was fetched from ECS, or 0 if some source has none yet.
+     * Anything that appeared after this time may be missing from {@link #fetchAll()}.
+     */
+    public long getOldestFetchedAt() {
+        long oldest = Long.MAX_VALUE;
+        for (Source source : sources) {
+            SharedDiscoveryCache.Snapshot snapshot = source.serviceTasks.peek();
+            if (snapshot == null) {
+                return 0;
+            }
+            oldest = Math.min(oldest, snapshot.getFetchedAt());
+        }
+        return oldest;
+    }
+
+    private static Set<String> ipsOf(Collection<Task> tasks) {
+        Set<String> ips = new HashSet<>();
+        for (Task task : tasks) {
+            String ip = ECSTaskDiscoveryEngine.privateIp(task);
+            if (ip != null) {
+                ips.add(ip);
+            }
+        }
+        return ips;
+    }
+
+    /**
+     * One line per source: its current IPs, last outcome, consecutive failures and last error.
+     */
+    public String print() {
+        long now = System.currentTimeMillis();
+        StringBuilder sb = new StringBuilder();
+        for (Source source : sources) {
+            sb.append(source.ref).append(": ").append(source.discovery.addresses().size()).append(" IPs");
+            sb.append(", last ").append(source.lastOutcome);
+            if (source.lastSuccess != 0) {
+                sb.append(", ok ").append((now - source.lastSuccess) / 1000).append("s ago");
+            }
+            if (source.failures > 0) {
+                sb.append(", ").append(source.failures).append(" failures, backing off ")
+                        .append(Math.max(0, source.backoffUntil - now)).append(" ms: ").append(source.lastFailure);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() {
+        for (Source source : sources) {
+            source.subscription.close();
+            source.serviceTasks.release();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.jgroups.ecs;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Phi-accrual failure detector (Hayashibara et al.). For every node it keeps a sliding window
+ * of heartbeat inter-arrival times and round-trip times. Suspicion is expressed as
+ * phi = -log10(P(a heartbeat arrives later than now)), assuming normally distributed
+ * intervals, so the threshold adapts to how regular each node actually is.
+ */
+public class PhiAccrualDetector {
+
+    private final int windowSize;
+    private final double minStdDevMillis;
+    private final long acceptablePauseMillis;
+    private final Map<String, History> histories = new ConcurrentHashMap<>();
+
+    public PhiAccrualDetector(int windowSize, double minStdDevMillis, long acceptablePauseMillis) {
+        this.windowSize = windowSize;
+        this.minStdDevMillis = minStdDevMillis;
+        this.acceptablePauseMillis = acceptablePauseMillis;
+    }
+
+    public void heartbeat(String node, long nowMillis, long rttMillis) {
+        histories.computeIfAbsent(node, n -> new History(windowSize)).record(nowMillis, rttMillis);
+    }
+
+    public void remove(String node) {
+        histories.remove(node);
+    }
+
+    // 0 for nodes with fewer than two heartbeats
+    public double phi(String node, long nowMillis) {
+        History history = histories.get(node);
+        return history == null ? 0 : history.phi(nowMillis);
+    }
+
+    /**
+     * Returns how many ms after its last heartbeat the node's phi reaches the threshold,
+     * or -1 if there is not enough history yet.
+     */
+    public long suspicionDelay(String node, double threshold) {
+        History history = histories.get(node);
+        return history == null ? -1 : history.suspicionDelay(threshold);
+    }
+
+    // RTT percentile (0-100) over the window, or -1 if nothing was recorded
+    public long rttPercentile(String node, double percentile) {
+        History history = histories.get(node);
+        return history == null ? -1 : history.rttPercentile(percentile);
+    }
+
+    public Map<String, History> getHistories() {
+        return histories;
+    }
+
+    public class History {
+        private final long[] intervals;
+        private final long[] rtts;
+        private int count;
+        private int next;
+        private int rttCount;  // RTTs start with the first heartbeat, intervals only with the second
+        private int rttNext;
+        private long lastHeartbeat = -1;
+        private double sum;
+        private double sumOfSquares;
+
+        History(int windowSize) {
+            this.intervals = new long[windowSize];
+            this.rtts = new long[windowSize];
+        }
+
+        synchronized void record(long now, long rtt) {
+            rtts[rttNext] = rtt;
+            rttNext = (rttNext + 1) % rtts.length;
+            rttCount = Math.min(rttCount + 1, rtts.length);
+            if (lastHeartbeat >= 0) {
+                long interval = now - lastHeartbeat;
+                if (count == intervals.length) {
+                    sum -= intervals[next];
+                    sumOfSquares -= (double) intervals[next] * intervals[next];
+                } else {
+                    count++;
+                }
+                intervals[next] = interval;
+                sum += interval;
+                sumOfSquares += (double) interval * interval;
+                next = (next + 1) % intervals.length;
+            }
+            lastHeartbeat = now;
+        }
+
+        private double mean() {
+            return sum / count + acceptablePauseMillis;
+        }
+
+        private double stdDev() {
+            double mean = sum / count;
+            double variance = Math.max(0, sumOfSquares / count - mean * mean);
+            return Math.max(minStdDevMillis, Math.sqrt(variance));
+        }
+
+        public synchronized double phi(long now) {
+            if (count == 0) {
+                return 0;
+            }
+            return phiOf(now - lastHeartbeat, mean(), stdDev());
+        }
+
+        synchronized long suspicionDelay(double threshold) {
+            if (count == 0) {
+                return -1;
+            }
+            double mean = mean();
+            double stdDev = stdDev();
+            // phi grows monotonically with the elapsed time, so bisect for the crossing point
+            double low = 0;
+            double high = mean + 40 * stdDev;
+            for (int i = 0; i < 40; i++) {
+                double mid = (low + high) / 2;
+                if (phiOf(mid, mean, stdDev) < threshold) {
+                    low = mid;
+                } else {
+                    high = mid;
+                }
+            }
+            return (long) Math.ceil(high);
+        }
+
+        public synchronized long rttPercentile(double percentile) {
+            if (rttCount == 0) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(rtts, rttCount);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * rttCount) - 1;
+            return sorted[Math.max(0, Math.min(rttCount - 1, index))];
+        }
+
+        public synchronized long getLastHeartbeat() {
+            return lastHeartbeat;
+        }
+    }
+
+    // Logistic approximation of the normal CDF, as used by Cassandra and Akka
+    private static double phiOf(double elapsed, double mean, double stdDev) {
+        double y = (elapsed - mean) / stdDev;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        if (elapsed > mean) {
+            return -Math.log10(e / (1.0 + e));
+        }
+        return -Math.log10(1.0 - 1.0 / (1.0 + e));
+    }
+}
@@ -0,0 +1,295 @@
+package com.example.jgroups.ecs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide cache of the running tasks of each (cluster, service), shared by every
+ * discovery protocol and fetcher in the JVM. A snapshot younger than the caller's max age
+ * is returned as is; otherwise one caller refreshes it while concurrent callers wait on the
+ * same in-flight request. Refreshes are incremental: only ARNs not in the previous snapshot
+ * (or still without an IP) are described. Each service also publishes the task IPs that
+ * appear and disappear between snapshots to its {@link DiscoveryListener}s. Entries are
+ * reference counted: each {@link #forService} is paired with a {@link ServiceTasks#release()},
+ * and the last release drops the entry and closes its engine.
+ */
+public final class SharedDiscoveryCache {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedDiscoveryCache.class);
+
+    public static final long DEFAULT_TTL_MILLIS = 5000;
+
+    private static final Map<String, ServiceTasks> services = new ConcurrentHashMap<>();
+    private static volatile Optional<String> localAccount;  // "region:account" short cluster names refer to; computed once
+
+    private SharedDiscoveryCache() {
+    }
+
+    /**
+     * Returns the shared entry for the cluster and service and takes a reference on it, to be
+     * given back with {@link ServiceTasks#release()}. The engine is only created (and owned by
+     * the cache) if the service has no entry yet: the first registrant's engine, with its client
+     * and describe concurrency, serves every caller until the last one releases the entry, and
+     * the suppliers of later callers are ignored.
+     */
+    public static ServiceTasks forService(String cluster, String service, Supplier<ECSTaskDiscoveryEngine> engine) {
+        return services.compute(clusterKey(cluster) + "/" + service, (key, entry) -> {
+            ServiceTasks tasks = entry != null ? entry : new ServiceTasks(key, engine.get());
+            tasks.references++;
+            return tasks;
+        });
+    }
+
+    /**
+     * Region, account and name of a cluster given by ARN or by name, so that equally named
+     * clusters of other accounts or regions never share an entry. A name refers to the clients'
+     * region and, on ECS, this task's account, so it maps to the same key as the ARN of that
+     * cluster; elsewhere a name is only qualified by itself.
+     */
+    static String clusterKey(String cluster) {
+        if (cluster.startsWith("arn:")) {
+            String[] parts = cluster.split(":", 6);  // arn:partition:ecs:region:account:cluster/name
+            if (parts.length == 6 && parts[5].startsWith("cluster/")) {
+                return parts[3] + ":" + parts[4] + ":" + parts[5].substring("cluster/".length());
+            }
+            return cluster;
+        }
+        Optional<String> local = localAccount;
+        if (local == null) {
+            local = localAccount = Optional.ofNullable(resolveLocalAccount());
+        }
+        return local.map(account -> account + ":" + cluster).orElse(cluster);
+    }
+
+    private static String resolveLocalAccount() {
+        if (!TaskMetadataClient.isEcs()) {
+            return null;
+        }
+        try {
+            String[] taskArn = TaskMetadataClient.shared().get().getTaskArn().split(":");  // arn:aws:ecs:region:account:task/...
+            return taskArn.length > 4 ? AwsClientRegistry.shared().region().id() + ":" + taskArn[4] : null;
+        } catch (Exception e) {
+            log.debug("Could not read this task's account, cluster names stay unqualified", e);
+            return null;
+        }
+    }
+
+    public static final class Snapshot {
+        private final Map<String, Task> tasks;
+        private final long fetchedAt;
+
+        Snapshot(Map<String, Task> tasks, long fetchedAt) {
+            this.tasks = Collections.unmodifiableMap(tasks);
+            this.fetchedAt = fetchedAt;
+        }
+
+        // Task ARN to described task, for every running task
+        public Map<String, Task> getTasks() {
+            return tasks;
+        }
+
+        public long getFetchedAt() {
+            return fetchedAt;
+        }
+    }
+
+    /**
+     * Loads the running tasks of a service without blocking, e.g. on the async SDK clients.
+     */
+    @FunctionalInterface
+    public interface AsyncLoader {
+        // Task ARN to described task; tasks in known (the previous snapshot) that have an IP need not be described again
+        CompletableFuture<Map<String, Task>> load(Map<String, Task> known);
+    }
+
+    public static final class ServiceTasks {
+        private final String key;
+        private final ECSTaskDiscoveryEngine engine;
+        private int references;  // Only changed inside compute calls on the services map
+        private volatile Snapshot snapshot;
+        private CompletableFuture<Snapshot> inFlight;
+        private final DiscoveryPublisher publisher = new DiscoveryPublisher();
+
+        ServiceTasks(String key, ECSTaskDiscoveryEngine engine) {
+            this.key = key;
+            this.engine = engine;
+        }
+
+        /**
+         * Gives back the reference taken by {@link #forService}. The last release removes the
+         * entry and closes its engine; a later forService starts a new one.
+         */
+        public void release() {
+            if (services.computeIfPresent(key, (k, entry) -> entry == this && --references == 0 ? null : entry) == null) {
+                engine.close();
+            }
+        }
+
+        public Snapshot get() {
+            return get(DEFAULT_TTL_MILLIS);
+        }
+
+        public Snapshot get(long maxAgeMillis) {
+            Snapshot current = snapshot;
+            if (isFresh(current, maxAgeMillis)) {
+                return current;
+            }
+
+            CompletableFuture<Snapshot> pending;
+            boolean leader = false;
+            synchronized (this) {
+                current = snapshot;
+                if (isFresh(current, maxAgeMillis)) {
+                    return current;
+                }
+                if (inFlight == null) {
+                    inFlight = new CompletableFuture<>();
+                    leader = true;
+                }
+                pending = inFlight;
+            }
+
+            if (leader) {
+                try {
+                    Snapshot previous = current;
+                    Snapshot loaded = DiscoveryMetrics.shared().record(DiscoveryMetrics.REFRESH, () -> load(previous));
+                    install(loaded);
+                    pending.complete(loaded);
+                } catch (RuntimeException e) {
+                    pending.completeExceptionally(e);
+                } finally {
+                    synchronized (this) {
+                        inFlight = null;
+                    }
+                }
+            }
+
+            try {
+                return pending.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        /**
+         * Non-blocking {@link #get(long)}: a stale snapshot is reloaded through the loader. The
+         * reload is the same single in-flight refresh synchronous callers wait on.
+         */
+        public CompletableFuture<Snapshot> getAsync(long maxAgeMillis, AsyncLoader loader) {
+            Snapshot current = snapshot;
+            if (isFresh(current, maxAgeMillis)) {
+                return CompletableFuture.completedFuture(current);
+            }
+
+            CompletableFuture<Snapshot> pending;
+            boolean leader = false;
+            synchronized (this) {
+                current = snapshot;
+                if (isFresh(current, maxAgeMillis)) {
+                    return CompletableFuture.completedFuture(current);
+                }
+                if (inFlight == null) {
+                    inFlight = new CompletableFuture<>();
+                    leader = true;
+                }
+                pending = inFlight;
+            }
+
+            if (leader) {
+                Map<String, Task> known = current != null ? current.tasks : Collections.emptyMap();
+                long fetchedAt = System.currentTimeMillis();
+                CompletableFuture<Map<String, Task>> loading;
+                try {
+                    loading = DiscoveryMetrics.shared().recordAsync(DiscoveryMetrics.REFRESH, () -> loader.load(known));
+                } catch (RuntimeException e) {
+                    loading = new CompletableFuture<>();
+                    loading.completeExceptionally(e);
+                }
+                loading.whenComplete((tasks, error) -> {
+                    try {
+                        if (error != null) {
+                            pending.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+                            return;
+                        }
+                        Snapshot loaded = new Snapshot(tasks, fetchedAt);
+                        install(loaded);
+                        pending.complete(loaded);
+                    } finally {
+                        // Only once installed, as in get(), so no caller starts a reload of the old snapshot meanwhile
+                        synchronized (this) {
+                            inFlight = null;
+                        }
+                    }
+                });
+            }
+            return pending;
+        }
+
+        private void install(Snapshot loaded) {
+            snapshot = loaded;
+            publisher.publish(DiscoveryDelta.between(publisher.getMembers(), privateIps(loaded)));
+        }
+
+        // The last loaded snapshot, or null before the first refresh; never triggers a refresh
+        public Snapshot peek() {
+            return snapshot;
+        }
+
+        /**
+         * Subscribes to the IPs added and removed between snapshots of this service. Events are
+         * only produced when some caller refreshes the snapshot.
+         */
+        public DiscoveryListener.Subscription subscribe(DiscoveryListener listener) {
+            return publisher.subscribe(listener);
+        }
+
+        public long getGeneration() {
+            return publisher.getGeneration();
+        }
+
+        private static Set<String> privateIps(Snapshot snapshot) {
+            Set<String> ips = new HashSet<>();
+            for (Task task : snapshot.tasks.values()) {
+                String ip = ECSTaskDiscoveryEngine.privateIp(task);
+                if (ip != null) {
+                    ips.add(ip);
+                }
+            }
+            return ips;
+        }
+
+        private static boolean isFresh(Snapshot snapshot, long maxAgeMillis) {
+            return snapshot != null && System.currentTimeMillis() - snapshot.fetchedAt < maxAgeMillis;
+        }
+
+        private Snapshot load(Snapshot previous) {
+            long fetchedAt = System.currentTimeMillis();
+            List<String> running = engine.listTaskArns();
+
+            Map<String, Task> tasks = new HashMap<>();
+            List<String> unseen = new ArrayList<>();
+            for (String arn : running) {
+                Task known = previous != null ? previous.tasks.get(arn) : null;
+                if (known != null && ECSTaskDiscoveryEngine.privateIp(known) != null) {
+                    tasks.put(arn, known);
+                } else {
+                    unseen.add(arn);
+                }
+            }
+            for (Task task : engine.describeTasks(unseen)) {
+                tasks.put(task.taskArn(), task);
+            }
+
+            log.debug("Refreshed {}/{}: {} tasks, {} described", engine.getClusterName(),
+                    engine.getServiceName(), tasks.size(), unseen.size());
+            return new Snapshot(tasks, fetchedAt);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.jgroups.ecs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Listens on a loopback TCP port for newline-delimited task state change events, so
+ * tests and local tooling can push events without AWS.
+ */
+public class SocketTaskEventSource implements TaskEventSource {
+
+    private static final Logger log = LoggerFactory.getLogger(SocketTaskEventSource.class);
+
+    private final int port;
+    private volatile ServerSocket serverSocket;
+
+    public SocketTaskEventSource(int port) {
+        this.port = port;
+    }
+
+    @Override
+    public void start(Consumer<TaskStateChangeEvent> listener) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> accept(listener), "ECS-EventSocket");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void accept(Consumer<TaskStateChangeEvent> listener) {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread handler = new Thread(() -> read(socket, listener), "ECS-EventSocket-" + socket.getPort());
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.error("Failed to accept task event connection", e);
+                }
+            }
+        }
+    }
+
+    private void read(Socket socket, Consumer<TaskStateChangeEvent> listener) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                FileTaskEventSource.dispatch(line, listener);
+            }
+        } catch (IOException e) {
+            log.debug("Task event connection closed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            log.debug("Failed to close task event socket", e);
+        }
+    }
+}
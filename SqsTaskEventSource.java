@@ -0,0 +1,66 @@
+package com.example.jgroups.ecs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.services.sqs.SqsClient;
+import software.amazon.awssdk.services.sqs.model.Message;
+import software.amazon.awssdk.services.sqs.model.ReceiveMessageRequest;
+
+import java.util.function.Consumer;
+
+/**
+ * Long-polls an SQS queue that an EventBridge rule feeds with ECS task state changes.
+ */
+public class SqsTaskEventSource implements TaskEventSource {
+
+    private static final Logger log = LoggerFactory.getLogger(SqsTaskEventSource.class);
+
+    private final String queueUrl;
+    private final SqsClient sqsClient = AwsClientRegistry.shared().sqs();  // Shared; not closed here
+    private volatile Thread poller;
+
+    public SqsTaskEventSource(String queueUrl) {
+        this.queueUrl = queueUrl;
+    }
+
+    @Override
+    public void start(Consumer<TaskStateChangeEvent> listener) {
+        poller = new Thread(() -> poll(listener), "ECS-EventQueue");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    private void poll(Consumer<TaskStateChangeEvent> listener) {
+        ReceiveMessageRequest request = ReceiveMessageRequest.builder()
+                .queueUrl(queueUrl)
+                .maxNumberOfMessages(10)
+                .waitTimeSeconds(20)
+                .build();
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                for (Message message : sqsClient.receiveMessage(request).messages()) {
+                    FileTaskEventSource.dispatch(message.body(), listener);
+                    sqsClient.deleteMessage(r -> r.queueUrl(queueUrl).receiptHandle(message.receiptHandle()));
+                }
+            } catch (Exception e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                log.error("Failed to receive task events from {}", queueUrl, e);
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (poller != null) {
+            poller.interrupt();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.jgroups.ecs;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Membership state for SWIM-style probing (Das, Gupta, Motivala). Tracks each member's state
+ * and incarnation, hands out probe targets in randomized round-robin order (every member is
+ * probed once per pass, so detection time is bounded), and keeps a queue of recent membership
+ * updates to piggyback on outgoing probes. Each update is retransmitted about
+ * {@code retransmitMultiplier * log2(n)} times, which spreads it to the whole group with high probability.
+ */
+public class SwimMembership {
+
+    public enum State { ALIVE, SUSPECT, DEAD }
+
+    public static final class Update {
+        private final String node;
+        private final State state;
+        private final int incarnation;
+
+        public Update(String node, State state, int incarnation) {
+            this.node = node;
+            this.state = state;
+            this.incarnation = incarnation;
+        }
+
+        public String getNode() {
+            return node;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public int getIncarnation() {
+            return incarnation;
+        }
+
+        @Override
+        public String toString() {
+            return node + ":" + state + "#" + incarnation;
+        }
+    }
+
+    private static final class Gossip {
+        final Update update;
+        int remaining;
+
+        Gossip(Update update, int remaining) {
+            this.update = update;
+            this.remaining = remaining;
+        }
+    }
+
+    private final String localNode;
+    private final int retransmitMultiplier;
+    private int localIncarnation;
+
+    private final Map<String, Update> members = new HashMap<>();
+    private final Map<String, Gossip> gossip = new LinkedHashMap<>();  // At most one pending update per node
+    private final List<String> probeOrder = new ArrayList<>();
+    private int probeIndex;
+
+    public SwimMembership(String localNode, int retransmitMultiplier) {
+        this.localNode = localNode;
+        this.retransmitMultiplier = retransmitMultiplier;
+    }
+
+    public synchronized void addMember(String node) {
+        if (!node.equals(localNode) && !members.containsKey(node)) {
+            apply(new Update(node, State.ALIVE, 0));
+        }
+    }
+
+    public synchronized State getState(String node) {
+        Update update = members.get(node);
+        return update == null ? null : update.state;
+    }
+
+    public synchronized boolean suspect(String node) {
+        Update current = members.get(node);
+        return current != null && apply(new Update(node, State.SUSPECT, current.incarnation));
+    }
+
+    public synchronized boolean confirmDead(String node) {
+        Update current = members.get(node);
+        return current != null && apply(new Update(node, State.DEAD, current.incarnation));
+    }
+
+    /**
+     * The node answered a probe. A local suspicion is cleared, but at the same incarnation and
+     * without gossiping it: only the suspected node may raise its incarnation to refute the
+     * suspicion, so another node's suspicion at this incarnation still takes precedence.
+     */
+    public synchronized boolean alive(String node) {
+        Update current = members.get(node);
+        if (current == null) {
+            return apply(new Update(node, State.ALIVE, 0));
+        }
+        if (current.state != State.SUSPECT) {
+            return false;
+        }
+        members.put(node, new Update(node, State.ALIVE, current.incarnation));
+        return true;
+    }
+
+    /**
+     * Applies an update using SWIM's precedence rules. Returns true if it changed the local view
+     * (it is then queued for further dissemination). Suspicions about this node are refuted
+     * by gossiping a higher incarnation.
+     */
+    public synchronized boolean apply(Update update) {
+        if (update.node.equals(localNode)) {
+            if (update.state != State.ALIVE && update.incarnation >= localIncarnation) {
+                localIncarnation = update.incarnation + 1;
+                enqueue(new Update(localNode, State.ALIVE, localIncarnation));
+            }
+            return false;
+        }
+
+        Update current = members.get(update.node);
+        if (!overrides(update, current)) {
+            return false;
+        }
+        members.put(update.node, update);
+        enqueue(update);
+        return true;
+    }
+
+    private static boolean overrides(Update update, Update current) {
+        if (current == null) {
+            return true;
+        }
+        switch (update.state) {
+            case ALIVE:
+                return update.incarnation > current.incarnation;
+            case SUSPECT:
+                return current.state == State.ALIVE ? update.incarnation >= current.incarnation
+                        : current.state == State.SUSPECT && update.incarnation > current.incarnation;
+            default:
+                return current.state != State.DEAD;
+        }
+    }
+
+    private void enqueue(Update update) {
+        int n = members.size() + 1;
+        int transmissions = retransmitMultiplier * (32 - Integer.numberOfLeadingZeros(n));
+        gossip.remove(update.node);
+        gossip.put(update.node, new Gossip(update, Math.max(1, transmissions)));
+    }
+
+    /**
+     * Returns up to {@code max} updates to piggyback on an outgoing message, preferring the
+     * ones sent least often so far.
+     */
+    public synchronized List<Update> piggyback(int max) {
+        if (gossip.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Gossip> candidates = new ArrayList<>(gossip.values());
+        candidates.sort((a, b) -> Integer.compare(b.remaining, a.remaining));
+
+        List<Update> updates = new ArrayList<>(Math.min(max, candidates.size()));
+        for (Gossip g : candidates.subList(0, Math.min(max, candidates.size()))) {
+            updates.add(g.update);
+            if (--g.remaining <= 0) {
+                gossip.remove(g.update.node);
+            }
+        }
+        return updates;
+    }
+
+    /**
+     * Returns the next {@code count} members to probe. Members are visited in a random order
+     * that is reshuffled after each full pass.
+     */
+    public synchronized List<String> nextProbeTargets(int count) {
+        List<String> targets = new ArrayList<>(count);
+        int attempts = 0;
+        while (targets.size() < count && attempts++ < probeOrder.size() + members.size() + 1) {
+            if (probeIndex >= probeOrder.size()) {
+                probeOrder.clear();
+                members.values().stream()
+                        .filter(u -> u.state != State.DEAD)
+                        .forEach(u -> probeOrder.add(u.node));
+                Collections.shuffle(probeOrder, ThreadLocalRandom.current());
+                probeIndex = 0;
+                if (probeOrder.isEmpty()) {
+                    break;
+                }
+            }
+            String node = probeOrder.get(probeIndex++);
+            Update update = members.get(node);
+            if (update != null && update.state != State.DEAD && !targets.contains(node)) {
+                targets.add(node);
+            }
+        }
+        return targets;
+    }
+
+    // Picks up to count random live members other than the excluded one, to relay indirect probes
+    public synchronized List<String> randomHelpers(int count, String exclude) {
+        List<String> candidates = new ArrayList<>();
+        for (Update update : members.values()) {
+            if (update.state == State.ALIVE && !update.node.equals(exclude)) {
+                candidates.add(update.node);
+            }
+        }
+        Collections.shuffle(candidates, ThreadLocalRandom.current());
+        return candidates.subList(0, Math.min(count, candidates.size()));
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.jgroups.ecs;
+
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps described ECS tasks to the private IP each one is reachable on.
+ */
+@FunctionalInterface
+public interface TaskAddressResolver {
+
+    // Reads the IP straight from the task description; tasks without one yet are left out
+    TaskAddressResolver DIRECT = tasks -> {
+        Map<String, String> addresses = new HashMap<>();
+        for (Task task : tasks) {
+            String ip = ECSTaskDiscoveryEngine.privateIp(task);
+            if (ip != null) {
+                addresses.put(task.taskArn(), ip);
+            }
+        }
+        return addresses;
+    };
+
+    /**
+     * Returns task ARN to private IP for every task that could be resolved. Tasks that are
+     * missing from the result are described again on the next refresh.
+     */
+    Map<String, String> resolve(List<Task> tasks);
+}
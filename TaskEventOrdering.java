@@ -0,0 +1,44 @@
+package com.example.jgroups.ecs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Passes on only task state change events that are newer than the last one seen for the same
+ * task. EventBridge, SQS and SNS do not preserve order, so a late RUNNING event would otherwise
+ * bring a STOPPED task back into the members. The most recently updated tasks are remembered.
+ */
+public class TaskEventOrdering implements Consumer<TaskStateChangeEvent> {
+
+    private static final Logger log = LoggerFactory.getLogger(TaskEventOrdering.class);
+    private static final int MAX_TASKS = 10_000;
+
+    private final Consumer<TaskStateChangeEvent> listener;
+    private final Map<String, TaskStateChangeEvent> latest = new LinkedHashMap<String, TaskStateChangeEvent>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TaskStateChangeEvent> eldest) {
+            return size() > MAX_TASKS;
+        }
+    };
+
+    public TaskEventOrdering(Consumer<TaskStateChangeEvent> listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void accept(TaskStateChangeEvent event) {
+        synchronized (latest) {
+            TaskStateChangeEvent previous = latest.get(event.getTaskArn());
+            if (previous != null && !previous.isSupersededBy(event)) {
+                log.debug("Dropping out-of-order task event {}, already at {}", event, previous);
+                return;
+            }
+            latest.put(event.getTaskArn(), event);
+            listener.accept(event);  // Under the lock, so events from concurrent readers arrive in the order checked
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.jgroups.ecs;
+
+import java.util.function.Consumer;
+
+/**
+ * A feed of ECS task state change events. Sources are created from a URI:
+ * <ul>
+ *   <li>{@code sqs:<queue-url>} - an SQS queue that EventBridge delivers task state changes to</li>
+ *   <li>{@code file:<path>} - a file with one JSON event per line, tailed for new lines</li>
+ *   <li>{@code socket:<port>} - a local TCP port accepting one JSON event per line</li>
+ * </ul>
+ */
+public interface TaskEventSource extends AutoCloseable {
+
+    static TaskEventSource fromUri(String uri) {
+        if (uri.startsWith("sqs:")) {
+            return new SqsTaskEventSource(uri.substring("sqs:".length()));
+        }
+        if (uri.startsWith("file:")) {
+            return new FileTaskEventSource(uri.substring("file:".length()));
+        }
+        if (uri.startsWith("socket:")) {
+            return new SocketTaskEventSource(Integer.parseInt(uri.substring("socket:".length())));
+        }
+        throw new IllegalArgumentException("Unsupported task event source: " + uri);
+    }
+
+    /**
+     * Starts delivering events to the listener on a background thread.
+     */
+    void start(Consumer<TaskStateChangeEvent> listener) throws Exception;
+
+    @Override
+    void close();
+}
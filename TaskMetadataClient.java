@@ -0,0 +1,249 @@
+package com.example.jgroups.ecs;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.services.ecs.model.Tag;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Process-wide client for the ECS task metadata endpoint (v4). The /task document is read
+ * once over a keep-alive connection with a streaming parser that only extracts the fields
+ * discovery needs. Everything it returns is fixed for the life of the task, so it is memoized,
+ * as is the service name (which may need one ListTagsForResource call).
+ */
+public final class TaskMetadataClient {
+
+    private static final String METADATA_URI_ENV = "ECS_CONTAINER_METADATA_URI_V4";
+    // Overrides the environment, e.g. to point at EcsApiSimulator
+    public static final String METADATA_URI_PROPERTY = "jgroups.ecs.metadataUri";
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static volatile TaskMetadataClient shared;
+
+    private final String metadataUri;
+    private final HttpClient httpClient;
+    private volatile TaskMetadata metadata;
+    private volatile String serviceName;
+
+    public TaskMetadataClient(String metadataUri) {
+        this.metadataUri = metadataUri;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(2))
+                .build();
+    }
+
+    public static TaskMetadataClient shared() {
+        if (shared == null) {
+            synchronized (TaskMetadataClient.class) {
+                if (shared == null) {
+                    shared = new TaskMetadataClient(metadataUri());
+                }
+            }
+        }
+        return shared;
+    }
+
+    public static boolean isEcs() {
+        return metadataUri() != null;
+    }
+
+    private static String metadataUri() {
+        return System.getProperty(METADATA_URI_PROPERTY, System.getenv(METADATA_URI_ENV));
+    }
+
+    public static final class TaskMetadata {
+        private final String cluster;
+        private final String taskArn;
+        private final String serviceName;
+        private final String availabilityZone;
+        private final List<String> containerAddresses;
+        private final String networkMode;
+
+        TaskMetadata(String cluster, String taskArn, String serviceName, String availabilityZone,
+                     List<String> containerAddresses, String networkMode) {
+            this.cluster = cluster;
+            this.taskArn = taskArn;
+            this.serviceName = serviceName;
+            this.availabilityZone = availabilityZone;
+            this.containerAddresses = Collections.unmodifiableList(containerAddresses);
+            this.networkMode = networkMode;
+        }
+
+        public String getCluster() {
+            return cluster;
+        }
+
+        public String getTaskArn() {
+            return taskArn;
+        }
+
+        // Only reported by newer agents; null otherwise
+        public String getServiceName() {
+            return serviceName;
+        }
+
+        public String getAvailabilityZone() {
+            return availabilityZone;
+        }
+
+        // First IPv4 address of each container's first network
+        public List<String> getContainerAddresses() {
+            return containerAddresses;
+        }
+
+        public String getNetworkMode() {
+            return networkMode;
+        }
+    }
+
+    public TaskMetadata get() throws IOException {
+        TaskMetadata result = metadata;
+        if (result == null) {
+            synchronized (this) {
+                result = metadata;
+                if (result == null) {
+                    result = metadata = fetch();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the name of the service that started this task, taken from the metadata if the
+     * agent reports it and otherwise from the task's ecs:serviceName tag (ECS managed tags must be enabled).
+     */
+    public String getServiceName(EcsClient ecsClient) throws IOException {
+        String result = serviceName;
+        if (result == null) {
+            synchronized (this) {
+                result = serviceName;
+                if (result == null) {
+                    TaskMetadata task = get();
+                    result = task.getServiceName() != null ? task.getServiceName() : serviceNameFromTags(ecsClient, task.getTaskArn());
+                    serviceName = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String serviceNameFromTags(EcsClient ecsClient, String taskArn) {
+        for (Tag tag : DiscoveryMetrics.shared().record(DiscoveryMetrics.LIST_TAGS,
+                () -> ecsClient.listTagsForResource(r -> r.resourceArn(taskArn))).tags()) {
+            if (tag.key().equals("ecs:serviceName")) {
+                return tag.value();
+            }
+        }
+        return null;
+    }
+
+    private TaskMetadata fetch() throws IOException {
+        if (metadataUri == null) {
+            throw new IOException(METADATA_URI_ENV + " is not set; not running on ECS");
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(metadataUri + "/task"))
+                .timeout(Duration.ofSeconds(5))
+                .GET()
+                .build();
+        try {
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream in = response.body()) {
+                if (response.statusCode() != 200) {
+                    throw new IOException("Task metadata returned HTTP " + response.statusCode());
+                }
+                return parse(in);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading task metadata", e);
+        }
+    }
+
+    static TaskMetadata parse(InputStream in) throws IOException {
+        String cluster = null, taskArn = null, serviceName = null, availabilityZone = null, networkMode = null;
+        List<String> addresses = new ArrayList<>();
+
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Task metadata is not a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "Cluster":
+                        cluster = parser.getValueAsString();
+                        break;
+                    case "TaskARN":
+                        taskArn = parser.getValueAsString();
+                        break;
+                    case "ServiceName":
+                        serviceName = parser.getValueAsString();
+                        break;
+                    case "AvailabilityZone":
+                        availabilityZone = parser.getValueAsString();
+                        break;
+                    case "Containers":
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            String[] network = readFirstNetwork(parser);
+                            if (network[1] != null) {
+                                addresses.add(network[1]);
+                                networkMode = network[0];
+                            }
+                        }
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+        return new TaskMetadata(cluster, taskArn, serviceName, availabilityZone, addresses, networkMode);
+    }
+
+    // Reads one container object, returning {NetworkMode, first IPv4 address} of its first network
+    private static String[] readFirstNetwork(JsonParser parser) throws IOException {
+        String[] network = new String[2];
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (!"Networks".equals(field) || parser.currentToken() != JsonToken.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            boolean first = true;
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String networkField = parser.getCurrentName();
+                    parser.nextToken();
+                    if (first && "NetworkMode".equals(networkField)) {
+                        network[0] = parser.getValueAsString();
+                    } else if (first && "IPv4Addresses".equals(networkField) && parser.currentToken() == JsonToken.START_ARRAY) {
+                        if (parser.nextToken() == JsonToken.VALUE_STRING) {
+                            network[1] = parser.getValueAsString();
+                        }
+                        while (parser.currentToken() != JsonToken.END_ARRAY) {
+                            parser.skipChildren();
+                            parser.nextToken();
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                first = false;
+            }
+        }
+        return network;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.jgroups.ecs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * An ECS "Task State Change" event. Accepts the EventBridge event itself, an SQS message
+ * whose body is the event, and an SNS notification (as delivered to SQS) wrapping it.
+ */
+public class TaskStateChangeEvent {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final String clusterArn;
+    private final String serviceName;
+    private final String taskArn;
+    private final String lastStatus;
+    private final String desiredStatus;
+    private final String privateIp;
+    private final long version;  // detail.version, bumped by ECS on every change of the task; -1 if absent
+    private final Instant updatedAt;  // detail.updatedAt; null if absent
+
+    private TaskStateChangeEvent(JsonNode detail) {
+        this.clusterArn = detail.path("clusterArn").asText(null);
+        String group = detail.path("group").asText("");
+        this.serviceName = group.startsWith("service:") ? group.substring("service:".length()) : null;
+        this.taskArn = detail.path("taskArn").asText(null);
+        this.lastStatus = detail.path("lastStatus").asText("");
+        this.desiredStatus = detail.path("desiredStatus").asText("");
+        this.privateIp = findPrivateIp(detail);
+        this.version = detail.path("version").asLong(-1);
+        this.updatedAt = parseInstant(detail.path("updatedAt").asText(null));
+    }
+
+    private static Instant parseInstant(String text) {
+        try {
+            return text != null ? Instant.parse(text) : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses one event. Returns null if the JSON is not an ECS task state change.
+     */
+    public static TaskStateChangeEvent parse(String json) throws IOException {
+        JsonNode root = mapper.readTree(json);
+
+        // Unwrap SQS ("Body") and SNS ("Message") envelopes
+        for (String envelope : new String[]{"Body", "Message"}) {
+            if (root.path(envelope).isTextual()) {
+                root = mapper.readTree(root.path(envelope).asText());
+            }
+        }
+
+        if (!"ECS Task State Change".equals(root.path("detail-type").asText())) {
+            return null;
+        }
+        TaskStateChangeEvent event = new TaskStateChangeEvent(root.path("detail"));
+        return event.taskArn != null ? event : null;
+    }
+
+    private static String findPrivateIp(JsonNode detail) {
+        for (JsonNode attachment : detail.path("attachments")) {
+            for (JsonNode entry : attachment.path("details")) {
+                if ("privateIPv4Address".equals(entry.path("name").asText())) {
+                    return entry.path("value").asText(null);
+                }
+            }
+        }
+        for (JsonNode container : detail.path("containers")) {
+            for (JsonNode eni : container.path("networkInterfaces")) {
+                if (eni.hasNonNull("privateIpv4Address")) {
+                    return eni.path("privateIpv4Address").asText();
+                }
+            }
+        }
+        return null;
+    }
+
+    // True if the event belongs to the given cluster (name or ARN) and service
+    public boolean matches(String cluster, String service) {
+        boolean clusterMatches = cluster == null || cluster.equals(clusterArn)
+                || (clusterArn != null && clusterArn.endsWith("/" + cluster));
+        return clusterMatches && (service == null || service.equals(serviceName));
+    }
+
+    /**
+     * True if the given event of the same task should replace this one: it has a higher
+     * detail.version (or, without versions, a later detail.updatedAt). A stopped task never
+     * runs again, so a stop always replaces a running state and is never replaced by one.
+     */
+    public boolean isSupersededBy(TaskStateChangeEvent later) {
+        if (isStopping() != later.isStopping()) {
+            return later.isStopping();
+        }
+        if (version >= 0 && later.version >= 0) {
+            return later.version > version;
+        }
+        if (updatedAt != null && later.updatedAt != null) {
+            return later.updatedAt.isAfter(updatedAt);
+        }
+        return true;
+    }
+
+    public boolean isRunning() {
+        return "RUNNING".equals(lastStatus) && "RUNNING".equals(desiredStatus);
+    }
+
+    public boolean isStopping() {
+        return "STOPPED".equals(desiredStatus) || "STOPPED".equals(lastStatus);
+    }
+
+    public String getClusterArn() {
+        return clusterArn;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public String getTaskArn() {
+        return taskArn;
+    }
+
+    public String getLastStatus() {
+        return lastStatus;
+    }
+
+    public String getPrivateIp() {
+        return privateIp;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    @Override
+    public String toString() {
+        return taskArn + " v" + version + " " + lastStatus + "/" + desiredStatus + " " + privateIp;
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.jgroups.ping;
+
+import java.util.*;
+import java.util.function.BiPredicate;
+
+/**
+ * Copy-on-write store of discovery entries for one cluster. Every change publishes a new
+ * immutable snapshot with a higher version, so reads never copy or lock, and readers can ask
+ * for just the changes since the version they last saw. Writes that do not change an entry
+ * do not bump the version.
+ */
+public class VersionedDiscoveryStore<K, V> {
+
+    private static final int MAX_CHANGES = 1024;
+
+    public static final class Snapshot<K, V> {
+        private final long version;
+        private final Map<K, V> entries;
+
+        Snapshot(long version, Map<K, V> entries) {
+            this.version = version;
+            this.entries = entries;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        // Immutable
+        public Map<K, V> getEntries() {
+            return entries;
+        }
+    }
+
+    public static final class Changes<K, V> {
+        private final long version;
+        private final boolean fullResync;
+        private final Map<K, V> updated;
+        private final Set<K> removed;
+
+        Changes(long version, boolean fullResync, Map<K, V> updated, Set<K> removed) {
+            this.version = version;
+            this.fullResync = fullResync;
+            this.updated = updated;
+            this.removed = removed;
+        }
+
+        // The version these changes bring the reader up to
+        public long getVersion() {
+            return version;
+        }
+
+        // True if the reader was too far behind; updated then holds every entry and previous state must be dropped
+        public boolean isFullResync() {
+            return fullResync;
+        }
+
+        public Map<K, V> getUpdated() {
+            return updated;
+        }
+
+        public Set<K> getRemoved() {
+            return removed;
+        }
+
+        public boolean isEmpty() {
+            return !fullResync && updated.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    private static final class Change<K> {
+        final long version;
+        final K key;
+
+        Change(long version, K key) {
+            this.version = version;
+            this.key = key;
+        }
+    }
+
+    private final BiPredicate<V, V> sameValue;
+    private volatile Snapshot<K, V> snapshot = new Snapshot<>(0, Collections.emptyMap());
+    private final ArrayDeque<Change<K>> changes = new ArrayDeque<>();
+
+    public VersionedDiscoveryStore(BiPredicate<V, V> sameValue) {
+        this.sameValue = sameValue;
+    }
+
+    public Snapshot<K, V> snapshot() {
+        return snapshot;
+    }
+
+    public synchronized void put(K key, V value) {
+        V existing = snapshot.entries.get(key);
+        if (existing != null && sameValue.test(existing, value)) {
+            return;
+        }
+        Map<K, V> entries = new HashMap<>(snapshot.entries);
+        entries.put(key, value);
+        publish(entries, key);
+    }
+
+    public synchronized void remove(K key) {
+        if (!snapshot.entries.containsKey(key)) {
+            return;
+        }
+        Map<K, V> entries = new HashMap<>(snapshot.entries);
+        entries.remove(key);
+        publish(entries, key);
+    }
+
+    public synchronized void clear() {
+        if (snapshot.entries.isEmpty()) {
+            return;
+        }
+        long version = snapshot.version;
+        for (K key : snapshot.entries.keySet()) {
+            log(new Change<>(++version, key));
+        }
+        snapshot = new Snapshot<>(version, Collections.emptyMap());
+    }
+
+    private void publish(Map<K, V> entries, K key) {
+        long version = snapshot.version + 1;
+        log(new Change<>(version, key));
+        snapshot = new Snapshot<>(version, Collections.unmodifiableMap(entries));
+    }
+
+    private void log(Change<K> change) {
+        changes.addLast(change);
+        if (changes.size() > MAX_CHANGES) {
+            changes.removeFirst();
+        }
+    }
+
+    /**
+     * Returns what changed after the given version. Costs nothing when the reader is up to date.
+     */
+    public Changes<K, V> changesSince(long version) {
+        Snapshot<K, V> current = snapshot;
+        if (version == current.version) {
+            return new Changes<>(version, false, Collections.emptyMap(), Collections.emptySet());
+        }
+
+        synchronized (this) {
+            current = snapshot;
+            Change<K> oldest = changes.peekFirst();
+            if (version > current.version || oldest == null || oldest.version > version + 1) {
+                return new Changes<>(current.version, true, current.entries, Collections.emptySet());
+            }
+
+            Map<K, V> updated = new HashMap<>();
+            Set<K> removed = new HashSet<>();
+            Iterator<Change<K>> it = changes.descendingIterator();
+            while (it.hasNext()) {
+                Change<K> change = it.next();
+                if (change.version <= version) {
+                    break;
+                }
+                if (updated.containsKey(change.key) || removed.contains(change.key)) {
+                    continue;  // A later change to this key was already seen
+                }
+                V value = current.entries.get(change.key);
+                if (value != null) {
+                    updated.put(change.key, value);
+                } else {
+                    removed.add(change.key);
+                }
+            }
+            return new Changes<>(current.version, false, updated, removed);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 plugins {
     id 'java'
+    id 'me.champeau.jmh' version '0.7.2'  // Benchmarks in jmh/, run with ./gradlew jmh
 }
 
 repositories {
@@ -13,13 +14,52 @@ dependencies {
 
     // AWS SDK for ECS
     implementation 'software.amazon.awssdk:ecs:2.17.113' // AWS SDK for ECS, replace with latest version
+    implementation 'software.amazon.awssdk:ec2:2.17.113' // ENI lookups for awsvpc tasks
+    implementation 'software.amazon.awssdk:sqs:2.17.113' // Task state change events delivered through SQS
+    implementation 'software.amazon.awssdk:apache-client:2.17.113' // Connection pool shared by all sync clients
+    implementation 'software.amazon.awssdk:netty-nio-client:2.17.113' // Event loop shared by all async clients
 
     // Logging (optional but recommended)
     implementation 'org.slf4j:slf4j-api:2.0.0-alpha1'
     implementation 'org.slf4j:slf4j-simple:2.0.0-alpha1' // For simple console logging
 
+    // Metrics: latency histograms, and Micrometer meters when the application provides Micrometer
+    implementation 'org.hdrhistogram:HdrHistogram:2.1.12'
+    compileOnly 'io.micrometer:micrometer-core:1.9.5'
+
     // Jackson (optional, required by AWS SDK for JSON parsing)
     implementation 'com.fasterxml.jackson.core:jackson-databind:2.14.1' // Adjust the version if needed
+
+    // Tests in test/, run against the local EcsApiSimulator and DnsStubServer
+    testImplementation 'org.junit.jupiter:junit-jupiter:5.9.1'
+    testRuntimeOnly 'org.junit.platform:junit-platform-launcher:1.9.1'
+
+    // StartupBenchmark runs against the EcsApiSimulator in test/
+    jmhImplementation sourceSets.test.output
+}
+
+sourceSets {
+    main {
+        java {
+            srcDirs = ['.']  // Production sources sit at the repository root
+            exclude 'jmh/**', 'test/**'
+        }
+    }
+    test {
+        java {
+            srcDirs = ['test']
+        }
+    }
+    jmh {
+        java {
+            srcDirs = ['jmh']
+        }
+    }
+}
+
+jmh {
+    jvmArgs = ['-Dorg.slf4j.simpleLogger.defaultLogLevel=warn']  // Keep per-round discovery logging out of the timings
+    resultFormat = 'JSON'
 }
 
 tasks.withType(JavaCompile) {
@@ -27,5 +67,6 @@ tasks.withType(JavaCompile) {
 }
 
 test {
-    useJUnitPlatform() // Optional if you're using JUnit 5 for tests
+    useJUnitPlatform()
+    systemProperty 'org.slf4j.simpleLogger.defaultLogLevel', 'warn'
 }
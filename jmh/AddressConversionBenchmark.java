@@ -0,0 +1,103 @@
+import com.example.jgroups.ecs.ECSTaskDiscoveryEngine;
+import com.example.jgroups.ecs.EniAddressResolver;
+import org.jgroups.PhysicalAddress;
+import org.jgroups.stack.IpAddress;
+import org.openjdk.jmh.annotations.*;
+import software.amazon.awssdk.services.ecs.model.DescribeTasksRequest;
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning discovered tasks into addresses: the private toPhysicalAddress helpers of ECS_PING
+ * and ECSTaskPingProtocol, reading the IP from a described task, and ENI resolution through
+ * EniAddressResolver once its cache is warm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AddressConversionBenchmark {
+
+    private static final MethodHandle ECS_PING_TO_ADDRESS;
+    private static final MethodHandle TASK_PING_TO_ADDRESS;
+
+    static {
+        try {
+            ECS_PING_TO_ADDRESS = MethodHandles.privateLookupIn(ECS_PING.class, MethodHandles.lookup())
+                    .findVirtual(ECS_PING.class, "toPhysicalAddress", MethodType.methodType(PhysicalAddress.class, String.class));
+            TASK_PING_TO_ADDRESS = MethodHandles.privateLookupIn(ECSTaskPingProtocol.class, MethodHandles.lookup())
+                    .findVirtual(ECSTaskPingProtocol.class, "toPhysicalAddress", MethodType.methodType(PhysicalAddress.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Param({"10", "2000"})
+    int tasks;
+
+    private ECS_PING ecsPing;
+    private ECSTaskPingProtocol taskPing;
+    private List<Task> describedTasks;
+    private List<Task> eniOnlyTasks;
+    private EniAddressResolver eniResolver;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ecsPing = new ECS_PING();
+        taskPing = new ECSTaskPingProtocol("bench", "address-conversion");
+        describedTasks = describeAll(new StubEcsClient(tasks, true));
+        eniOnlyTasks = describeAll(new StubEcsClient(tasks, false));
+        eniResolver = new EniAddressResolver(new StubEc2Client());
+        eniResolver.resolve(eniOnlyTasks);  // Warm the ENI cache
+    }
+
+    private List<Task> describeAll(StubEcsClient ecs) {
+        List<String> arns = new ArrayList<>();
+        for (int i = 0; i < tasks; i++) {
+            arns.add(StubEcsClient.arn(i));
+        }
+        return ecs.describeTasks(DescribeTasksRequest.builder().tasks(arns).build()).tasks();
+    }
+
+    private String nextIp() {
+        next = (next + 1) % tasks;
+        return StubEcsClient.ip(next);
+    }
+
+    @Benchmark
+    public Object ecsPingToPhysicalAddress() throws Throwable {
+        return (PhysicalAddress) ECS_PING_TO_ADDRESS.invokeExact(ecsPing, nextIp());
+    }
+
+    @Benchmark
+    public Object taskPingToPhysicalAddress() throws Throwable {
+        return (PhysicalAddress) TASK_PING_TO_ADDRESS.invokeExact(taskPing, nextIp());
+    }
+
+    @Benchmark
+    public Object ipAddressFromString() throws Exception {
+        return new IpAddress(nextIp(), 7800);
+    }
+
+    @Benchmark
+    public String privateIpOfTask() {
+        next = (next + 1) % tasks;
+        return ECSTaskDiscoveryEngine.privateIp(describedTasks.get(next));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Map<String, String> resolveAllThroughWarmEniCache() {
+        return eniResolver.resolve(eniOnlyTasks);
+    }
+}
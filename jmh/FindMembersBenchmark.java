@@ -0,0 +1,87 @@
+import com.example.jgroups.ecs.ECSTaskDiscoveryEngine;
+import com.example.jgroups.ecs.SharedDiscoveryCache;
+import org.jgroups.JChannel;
+import org.jgroups.protocols.SHARED_LOOPBACK;
+import org.jgroups.util.Responses;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One findMembers round of ECS_PING and ECS_PING_1 against a stubbed ECS service. With
+ * {@code cached} the shared task snapshot is fresh, which is the steady state between
+ * refreshes; without it every round lists all ListTasks pages (but describes nothing new).
+ * ECS_PING_1 is measured with pingTimeout=0, i.e. the cost of fanning out the pings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindMembersBenchmark {
+
+    private static final String CLUSTER = "bench";
+
+    @Param({"10", "100", "500", "2000"})
+    int tasks;
+
+    @Param({"true", "false"})
+    boolean cached;
+
+    private SharedDiscoveryCache.ServiceTasks registered;
+    private JChannel ecsPingChannel;
+    private ECS_PING ecsPing;
+    private JChannel ecsPing1Channel;
+    private com.example.jgroups.protocols.ECS_PING ecsPing1;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String service = "find-members-" + tasks;
+        StubEcsClient ecs = new StubEcsClient(tasks);
+        // Registered first, so both protocols pick up the stubbed engine for this service
+        registered = SharedDiscoveryCache.forService(CLUSTER, service, () -> new ECSTaskDiscoveryEngine(ecs, CLUSTER, service, 4));
+
+        ecsPing = new ECS_PING();
+        ecsPing.setValue("ecsClusterName", CLUSTER);
+        ecsPing.setValue("ecsServiceName", service);
+        ecsPing.setValue("discoveryCacheTtl", cached ? Long.MAX_VALUE / 2 : 0L);
+        ecsPing.setValue("membershipSnapshotFile", "none");
+        ecsPingChannel = new JChannel(new SHARED_LOOPBACK(), ecsPing);
+
+        ecsPing1 = new com.example.jgroups.protocols.ECS_PING();
+        setField(ecsPing1, "clusterName", CLUSTER);
+        setField(ecsPing1, "serviceName", service);
+        ecsPing1.setValue("pingTimeout", 0L);
+        ecsPing1.setValue("membershipSnapshotFile", "none");
+        ecsPing1Channel = new JChannel(new SHARED_LOOPBACK(), ecsPing1);
+
+        // Past the first (live) round
+        ecsPing();
+        ecsPing1();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ecsPingChannel.close();
+        ecsPing1Channel.close();
+        registered.release();
+    }
+
+    private static void setField(Object target, String name, Object value) throws Exception {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    @Benchmark
+    public Responses ecsPing() {
+        return ecsPing.findMembers(null, false, false, 0);
+    }
+
+    @Benchmark
+    public Responses ecsPing1() {
+        return ecsPing1.findMembers(null, false, false, 0);
+    }
+}
@@ -0,0 +1,33 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JsonToAthenaSqlConverter.convertJsonToSql on the query from its class comment.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonToSqlBenchmark {
+
+    private static final String QUERY = "{"
+            + "\"select\": [\"id\", \"name\", \"age\"],"
+            + "\"table\": \"users_data\","
+            + "\"where\": {\"and\": ["
+            + "{\"column\": \"age\", \"operator\": \">\", \"value\": 30},"
+            + "{\"column\": \"country\", \"operator\": \"=\", \"value\": \"India\"}"
+            + "]},"
+            + "\"group_by\": [\"country\"],"
+            + "\"order_by\": [{\"column\": \"age\", \"order\": \"DESC\"}],"
+            + "\"limit\": 100"
+            + "}";
+
+    @Benchmark
+    public String convertJsonToSql() throws IOException {
+        return JsonToAthenaSqlConverter.convertJsonToSql(QUERY);
+    }
+}
@@ -0,0 +1,107 @@
+import com.example.jgroups.ping.MappedDiscoveryRegistry;
+import com.example.jgroups.ping.VersionedDiscoveryStore;
+import org.jgroups.PhysicalAddress;
+import org.jgroups.stack.IpAddress;
+import org.jgroups.util.Tuple;
+import org.jgroups.util.UUID;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The read and write paths behind ECSOrLocalPing outside ECS: the in-process versioned store
+ * and the memory-mapped registry shared by the JVMs of a host.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalPingStoreBenchmark {
+
+    private static final String CLUSTER = "bench";
+
+    @Param({"10", "100", "1000"})
+    int members;
+
+    private VersionedDiscoveryStore<UUID, Tuple<PhysicalAddress, byte[]>> store;
+    private MappedDiscoveryRegistry registry;
+    private File registryFile;
+    private UUID[] uuids;
+    private PhysicalAddress[] addresses;
+    private byte[] data;
+    private byte[] otherData;
+    private long version;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        store = new VersionedDiscoveryStore<>(
+                (a, b) -> a.getVal1().equals(b.getVal1()) && Arrays.equals(a.getVal2(), b.getVal2()));
+        registryFile = File.createTempFile("jgroups-bench", ".registry");
+        registryFile.delete();
+        registry = new MappedDiscoveryRegistry(registryFile.getPath(), members + 16, 60000);
+
+        data = new byte[64];
+        otherData = new byte[64];
+        otherData[0] = 1;
+        uuids = new UUID[members];
+        addresses = new PhysicalAddress[members];
+        for (int i = 0; i < members; i++) {
+            uuids[i] = UUID.randomUUID();
+            addresses[i] = new IpAddress(StubEcsClient.ip(i), 7800);
+            store.put(uuids[i], new Tuple<>(addresses[i], data));
+            registry.write(CLUSTER, uuids[i], addresses[i], data);
+        }
+        version = store.snapshot().getVersion();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        registry.close();
+        registryFile.delete();
+    }
+
+    private int nextMember() {
+        next = (next + 1) % members;
+        return next;
+    }
+
+    @Benchmark
+    public Map<UUID, Tuple<PhysicalAddress, byte[]>> storeRead() {
+        return store.snapshot().getEntries();
+    }
+
+    @Benchmark
+    public Object storeChangesWhenUnchanged() {
+        return store.changesSince(version);
+    }
+
+    @Benchmark
+    public void storeRewriteSameEntry() {
+        int i = nextMember();
+        store.put(uuids[i], new Tuple<>(addresses[i], data));
+    }
+
+    @Benchmark
+    public void storeWriteChangedEntry() {
+        int i = nextMember();
+        store.put(uuids[i], new Tuple<>(addresses[i], (i & 1) == 0 ? data : otherData));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Map<UUID, Tuple<PhysicalAddress, byte[]>> registryRead() {
+        return registry.read(CLUSTER);
+    }
+
+    @Benchmark
+    public void registryWrite() {
+        int i = nextMember();
+        registry.write(CLUSTER, uuids[i], addresses[i], data);
+    }
+}
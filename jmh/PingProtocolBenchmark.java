@@ -0,0 +1,81 @@
+import com.example.jgroups.ecs.ECSTaskDiscoveryEngine;
+import com.example.jgroups.ecs.SharedDiscoveryCache;
+import org.jgroups.Event;
+import org.jgroups.Message;
+import org.jgroups.stack.IpAddress;
+import org.jgroups.stack.Protocol;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ECSTaskPingProtocol's hot paths with n known nodes: one ping round (sendPing), handling one
+ * ack, and one tick of the timeout scan when nothing has expired. Sent messages go to a sink
+ * protocol instead of a transport.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PingProtocolBenchmark {
+
+    private static final String CLUSTER = "bench";
+
+    @Param({"10", "100", "1000"})
+    int nodes;
+
+    @Param({"timeout", "phi"})
+    String suspicionMode;
+
+    private ECSTaskPingProtocol protocol;
+    private String localNode;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        String service = "ping-" + nodes;
+        StubEcsClient ecs = new StubEcsClient(nodes);
+        SharedDiscoveryCache.forService(CLUSTER, service, () -> new ECSTaskDiscoveryEngine(ecs, CLUSTER, service, 4));
+
+        protocol = new ECSTaskPingProtocol(CLUSTER, service);
+        protocol.setValue("suspicionMode", suspicionMode);
+        localNode = InetAddress.getLocalHost().getHostAddress();
+        IpAddress physical = new IpAddress(localNode, 7800);
+        protocol.setDownProtocol(new Protocol() {
+            @Override
+            public Object down(Event evt) {
+                return evt.getType() == Event.GET_PHYSICAL_ADDRESS ? physical : null;  // Stands in for the transport
+            }
+
+            @Override
+            public Object down(Message msg) {
+                return null;
+            }
+        });
+        protocol.init();  // Discovers the stubbed tasks
+        protocol.sendPing();  // Every node has an outstanding deadline from here on
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void sendRound() throws Exception {
+        protocol.sendPing();
+    }
+
+    @Benchmark
+    public void receiveAck() {
+        next = (next + 1) % nodes;
+        ECSTaskPingProtocol.Ping ack = ECSTaskPingProtocol.Ping.ack(StubEcsClient.ip(next), localNode,
+                System.currentTimeMillis(), 0, Collections.emptyList());
+        protocol.receivePing(ack);
+    }
+
+    @Benchmark
+    public void timeoutScan() {
+        protocol.checkForPingTimeouts();
+    }
+}
@@ -0,0 +1,110 @@
+import com.example.jgroups.ecs.AwsClientRegistry;
+import com.example.jgroups.ecs.EcsApiSimulator;
+import com.example.jgroups.ecs.ECSTaskDiscoveryEngine;
+import com.example.jgroups.ecs.SharedDiscoveryCache;
+import org.jgroups.JChannel;
+import org.jgroups.protocols.SHARED_LOOPBACK;
+import org.jgroups.protocols.UNICAST3;
+import org.jgroups.protocols.pbcast.GMS;
+import org.jgroups.protocols.pbcast.NAKACK2;
+import org.jgroups.protocols.pbcast.STABLE;
+import org.openjdk.jmh.annotations.*;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.utils.SdkAutoCloseable;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start of a node: creating the discovery classes' AWS clients plus JChannel.connect with
+ * ECS_PING, against an {@link EcsApiSimulator} (jgroups.ecs.endpoint points the clients at it).
+ * Every measurement is the first one in a fresh JVM, so class loading and connection setup are
+ * included, as they are on a real start.
+ *
+ * "per-caller" is the path before AwsClientRegistry: ECS_PING, ECSTaskIPFetcher and
+ * ECSNodeIPResolver each build their own ECS and EC2 clients (each with its own connection pool),
+ * and ECS_PING discovers over its own client. "shared" takes every client from the registry, and
+ * "prewarmed" also calls AwsClientRegistry.prewarm() before anything else, as an application can
+ * at startup (ECS_PING's init starts it in every mode). The simulator is started in the same JVM
+ * before the measurement, in every mode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+
+    private static final String CLUSTER = "startup-cluster";
+    private static final String SERVICE = "startup-service";
+    private static final int CALLERS = 3;  // ECS_PING, ECSTaskIPFetcher, ECSNodeIPResolver
+    private static final long JOIN_TIMEOUT = 100;  // The same in every mode; short, so it does not hide the difference
+
+    @Param({"per-caller", "shared", "prewarmed"})
+    String clients;
+
+    private EcsApiSimulator simulator;
+    private URI endpoint;
+
+    @Setup(Level.Trial)
+    public void startSimulator() throws Exception {
+        simulator = new EcsApiSimulator(CLUSTER, SERVICE).start();
+        simulator.setRunningTasks(50);
+        simulator.setLatency(5, 5);
+        endpoint = simulator.getEndpoint();
+        System.setProperty(AwsClientRegistry.ENDPOINT_PROPERTY, endpoint.toString());
+        // Read by the default region and credential chains, in every mode
+        System.setProperty("aws.region", "us-east-1");
+        System.setProperty("aws.accessKeyId", "sim");
+        System.setProperty("aws.secretAccessKey", "sim");
+    }
+
+    @TearDown(Level.Trial)
+    public void stopSimulator() {
+        simulator.close();
+    }
+
+    @Benchmark
+    public int connect() throws Exception {
+        if ("prewarmed".equals(clients)) {
+            AwsClientRegistry.shared().prewarm();
+        }
+        List<SdkAutoCloseable> owned = new ArrayList<>();
+        EcsClient discoveryClient = null;
+        for (int i = 0; i < CALLERS; i++) {
+            EcsClient ecs;
+            if ("per-caller".equals(clients)) {
+                ecs = EcsClient.builder().endpointOverride(endpoint).build();
+                owned.add(ecs);
+                owned.add(Ec2Client.builder().endpointOverride(endpoint).build());
+            } else {
+                ecs = AwsClientRegistry.shared().ecs();
+                AwsClientRegistry.shared().ec2();
+            }
+            if (discoveryClient == null) {
+                discoveryClient = ecs;
+            }
+        }
+        if ("per-caller".equals(clients)) {
+            EcsClient ecs = discoveryClient;
+            // Registered before the channel, so ECS_PING's discovery runs over its own client
+            SharedDiscoveryCache.forService(CLUSTER, SERVICE, () -> new ECSTaskDiscoveryEngine(ecs, CLUSTER, SERVICE, 4));
+        }
+
+        ECS_PING ping = new ECS_PING();
+        ping.setValue("ecsClusterName", CLUSTER);
+        ping.setValue("ecsServiceName", SERVICE);
+        ping.setValue("membershipSnapshotFile", "none");
+        try (JChannel channel = new JChannel(new SHARED_LOOPBACK(), ping, new NAKACK2(), new UNICAST3(), new STABLE(),
+                new GMS().setJoinTimeout(JOIN_TIMEOUT))) {
+            channel.connect(CLUSTER);
+            return channel.getView().size();
+        } finally {
+            owned.forEach(SdkAutoCloseable::close);
+        }
+    }
+}
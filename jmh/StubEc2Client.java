@@ -0,0 +1,35 @@
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ec2.model.DescribeNetworkInterfacesRequest;
+import software.amazon.awssdk.services.ec2.model.DescribeNetworkInterfacesResponse;
+import software.amazon.awssdk.services.ec2.model.NetworkInterface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory Ec2Client for benchmarks; ENI eni-i resolves to the IP StubEcsClient gives task i.
+ */
+public class StubEc2Client implements Ec2Client {
+
+    @Override
+    public DescribeNetworkInterfacesResponse describeNetworkInterfaces(DescribeNetworkInterfacesRequest request) {
+        List<NetworkInterface> interfaces = new ArrayList<>(request.networkInterfaceIds().size());
+        for (String id : request.networkInterfaceIds()) {
+            int i = Integer.parseInt(id.substring("eni-".length()));
+            interfaces.add(NetworkInterface.builder()
+                    .networkInterfaceId(id)
+                    .privateIpAddress(StubEcsClient.ip(i))
+                    .build());
+        }
+        return DescribeNetworkInterfacesResponse.builder().networkInterfaces(interfaces).build();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,94 @@
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.services.ecs.model.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory EcsClient for benchmarks: a fixed set of RUNNING awsvpc tasks, returned in
+ * ListTasks pages of 100 like the real API. Task i gets ENI eni-i and IP 10.x.y.z derived
+ * from i; with {@code withIps == false} the attachment omits the IP, so callers must go
+ * through EC2 DescribeNetworkInterfaces.
+ */
+public class StubEcsClient implements EcsClient {
+
+    private static final int PAGE_SIZE = 100;
+
+    private volatile List<String> arns;
+    private volatile Map<String, Task> tasks;
+    private final boolean withIps;
+
+    public StubEcsClient(int taskCount) {
+        this(taskCount, true);
+    }
+
+    public StubEcsClient(int taskCount, boolean withIps) {
+        this.withIps = withIps;
+        setTaskCount(taskCount);
+    }
+
+    public static String ip(int i) {
+        return "10." + ((i >> 16) & 255) + "." + ((i >> 8) & 255) + "." + (i & 255);
+    }
+
+    public static String arn(int i) {
+        return "arn:aws:ecs:us-east-1:123456789012:task/bench/" + i;
+    }
+
+    // Replaces the running tasks with 0..taskCount-1
+    public void setTaskCount(int taskCount) {
+        List<String> newArns = new ArrayList<>(taskCount);
+        Map<String, Task> newTasks = new HashMap<>();
+        for (int i = 0; i < taskCount; i++) {
+            List<KeyValuePair> details = new ArrayList<>();
+            details.add(KeyValuePair.builder().name("networkInterfaceId").value("eni-" + i).build());
+            if (withIps) {
+                details.add(KeyValuePair.builder().name("privateIPv4Address").value(ip(i)).build());
+            }
+            Task task = Task.builder()
+                    .taskArn(arn(i))
+                    .lastStatus("RUNNING")
+                    .attachments(Attachment.builder().type("ElasticNetworkInterface").details(details).build())
+                    .build();
+            newArns.add(task.taskArn());
+            newTasks.put(task.taskArn(), task);
+        }
+        this.tasks = newTasks;
+        this.arns = newArns;
+    }
+
+    @Override
+    public ListTasksResponse listTasks(ListTasksRequest request) {
+        List<String> all = arns;
+        int from = request.nextToken() != null ? Integer.parseInt(request.nextToken()) : 0;
+        int to = Math.min(from + PAGE_SIZE, all.size());
+        return ListTasksResponse.builder()
+                .taskArns(all.subList(from, to))
+                .nextToken(to < all.size() ? String.valueOf(to) : null)
+                .build();
+    }
+
+    @Override
+    public DescribeTasksResponse describeTasks(DescribeTasksRequest request) {
+        Map<String, Task> all = tasks;
+        List<Task> described = new ArrayList<>(request.tasks().size());
+        for (String arn : request.tasks()) {
+            Task task = all.get(arn);
+            if (task != null) {
+                described.add(task);
+            }
+        }
+        return DescribeTasksResponse.builder().tasks(described).build();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+}
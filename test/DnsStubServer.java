@@ -0,0 +1,255 @@
+package com.example.jgroups.ecs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Minimal UDP DNS server standing in for Cloud Map / Route 53 in tests: answers A and SRV
+ * queries from records set in memory, NXDOMAIN for anything else. {@link #mirror} publishes
+ * the running tasks of an {@link EcsApiSimulator} with a delay, reproducing how Cloud Map
+ * registers new tasks late and keeps stopped ones until they are deregistered.
+ * {@link DnsTaskResolver} reaches it through {@link #getServerUri()}.
+ */
+public class DnsStubServer implements AutoCloseable {
+
+    private static final int TYPE_A = 1;
+    private static final int TYPE_SRV = 33;
+    private static final int CLASS_IN = 1;
+
+    private final Map<String, List<String>> aRecords = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> srvRecords = new ConcurrentHashMap<>();  // Name -> "priority weight port target."
+    private final LongAdder queries = new LongAdder();
+    private final ScheduledExecutorService mirrors = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "DnsStubServer-Mirror");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile int ttlSeconds = 10;
+    private volatile long latencyMillis;
+    private DatagramSocket socket;
+    private Thread receiver;
+
+    public DnsStubServer start() throws SocketException {
+        socket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        receiver = new Thread(this::serve, "DnsStubServer");
+        receiver.setDaemon(true);
+        receiver.start();
+        return this;
+    }
+
+    // Provider URL for DnsTaskResolver
+    public String getServerUri() {
+        return "dns://127.0.0.1:" + socket.getLocalPort();
+    }
+
+    // ---- Records ----
+
+    public void setA(String name, Collection<String> ips) {
+        aRecords.put(normalize(name), new ArrayList<>(ips));
+    }
+
+    /**
+     * Publishes one SRV record per IP, each pointing at its own A record
+     * ({@code <ip-with-dashes>.<name>}), as Cloud Map does for instances registered by ECS.
+     */
+    public void setSrv(String name, int port, Collection<String> ips) {
+        String srv = normalize(name);
+        List<String> records = new ArrayList<>();
+        for (String ip : ips) {
+            String target = ip.replace('.', '-') + "." + srv;
+            aRecords.put(target, Collections.singletonList(ip));
+            records.add("1 1 " + port + " " + target + ".");
+        }
+        List<String> previous = srvRecords.put(srv, records);
+        if (previous != null) {
+            for (String record : previous) {
+                String target = normalize(record.substring(record.lastIndexOf(' ') + 1));
+                if (!records.contains(record)) {
+                    aRecords.remove(target);
+                }
+            }
+        }
+    }
+
+    public void remove(String name) {
+        aRecords.remove(normalize(name));
+        srvRecords.remove(normalize(name));
+    }
+
+    public void setTtl(int ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public void setLatency(long millis) {
+        this.latencyMillis = millis;
+    }
+
+    public long getQueryCount() {
+        return queries.sum();
+    }
+
+    /**
+     * Every 100 ms, publishes the simulator's running task IPs as they were {@code lagMillis}
+     * ago under {@code name} (SRV if it starts with '_', otherwise A).
+     */
+    public void mirror(EcsApiSimulator simulator, String name, int port, long lagMillis) {
+        Deque<Map.Entry<Long, List<String>>> history = new ArrayDeque<>();
+        mirrors.scheduleAtFixedRate(() -> {
+            long now = System.currentTimeMillis();
+            List<String> ips = new ArrayList<>();
+            for (EcsApiSimulator.SimulatedTask task : simulator.getRunningTasks()) {
+                ips.add(task.getPrivateIp());
+            }
+            history.addLast(new AbstractMap.SimpleEntry<>(now, ips));
+            List<String> published = null;
+            while (!history.isEmpty() && history.peekFirst().getKey() <= now - lagMillis) {
+                published = history.removeFirst().getValue();
+            }
+            if (published != null) {
+                if (name.startsWith("_")) {
+                    setSrv(name, port, published);
+                } else {
+                    setA(name, published);
+                }
+            }
+        }, 0, 100, TimeUnit.MILLISECONDS);
+    }
+
+    private static String normalize(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".") ? lower.substring(0, lower.length() - 1) : lower;
+    }
+
+    // ---- Protocol ----
+
+    private void serve() {
+        byte[] buffer = new byte[512];
+        while (!socket.isClosed()) {
+            try {
+                DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+                socket.receive(request);
+                queries.increment();
+                if (latencyMillis > 0) {
+                    Thread.sleep(latencyMillis);
+                }
+                byte[] response = answer(ByteBuffer.wrap(request.getData(), 0, request.getLength()));
+                if (response != null) {
+                    socket.send(new DatagramPacket(response, response.length, request.getSocketAddress()));
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException | RuntimeException e) {
+                if (socket.isClosed()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // Null for requests that are not a single standard query
+    private byte[] answer(ByteBuffer request) {
+        int id = request.getShort() & 0xFFFF;
+        int flags = request.getShort() & 0xFFFF;
+        int questions = request.getShort() & 0xFFFF;
+        if ((flags & 0x8000) != 0 || questions != 1) {
+            return null;
+        }
+        request.position(12);
+        int questionStart = request.position();
+        String name = normalize(readName(request));
+        int type = request.getShort() & 0xFFFF;
+        request.getShort();  // Class
+        int questionEnd = request.position();
+
+        List<String> values = type == TYPE_A ? aRecords.get(name) : type == TYPE_SRV ? srvRecords.get(name) : null;
+        boolean exists = aRecords.containsKey(name) || srvRecords.containsKey(name);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        writeShort(out, id);
+        writeShort(out, 0x8400 | (flags & 0x0100) | (exists ? 0 : 3));  // QR, AA, RD copied, NXDOMAIN if unknown
+        writeShort(out, 1);
+        writeShort(out, values != null ? values.size() : 0);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        out.write(request.array(), request.arrayOffset() + questionStart, questionEnd - questionStart);
+        if (values != null) {
+            for (String value : values) {
+                writeShort(out, 0xC00C);  // Pointer to the name in the question
+                writeShort(out, type);
+                writeShort(out, CLASS_IN);
+                writeInt(out, ttlSeconds);
+                byte[] data = type == TYPE_A ? addressData(value) : srvData(value);
+                writeShort(out, data.length);
+                out.write(data, 0, data.length);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static String readName(ByteBuffer buffer) {
+        StringBuilder name = new StringBuilder();
+        for (int length = buffer.get() & 0xFF; length > 0; length = buffer.get() & 0xFF) {
+            if (name.length() > 0) {
+                name.append('.');
+            }
+            byte[] label = new byte[length];
+            buffer.get(label);
+            name.append(new String(label, StandardCharsets.US_ASCII));
+        }
+        return name.toString();
+    }
+
+    private static byte[] addressData(String ip) {
+        String[] octets = ip.split("\\.");
+        byte[] data = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            data[i] = (byte) Integer.parseInt(octets[i]);
+        }
+        return data;
+    }
+
+    private static byte[] srvData(String record) {
+        String[] fields = record.split(" ");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeShort(out, Integer.parseInt(fields[0]));
+        writeShort(out, Integer.parseInt(fields[1]));
+        writeShort(out, Integer.parseInt(fields[2]));
+        for (String label : normalize(fields[3]).split("\\.")) {
+            out.write(label.length());
+            out.write(label.getBytes(StandardCharsets.US_ASCII), 0, label.length());
+        }
+        out.write(0);
+        return out.toByteArray();
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write((value >> 8) & 0xFF);
+        out.write(value & 0xFF);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        writeShort(out, value >>> 16);
+        writeShort(out, value & 0xFFFF);
+    }
+
+    @Override
+    public void close() {
+        mirrors.shutdownNow();
+        if (socket != null) {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,522 @@
+package com.example.jgroups.ecs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ecs.EcsClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local stand-in for the AWS APIs discovery uses, for load and throttling tests without AWS:
+ * ECS ListTasks, DescribeTasks and ListTagsForResource (JSON 1.1), EC2
+ * DescribeNetworkInterfaces (query/XML) and the v4 task metadata endpoint. SDK clients reach
+ * it through endpoint override (see {@link AwsClientRegistry#ENDPOINT_PROPERTY}) and
+ * {@link TaskMetadataClient} through {@link TaskMetadataClient#METADATA_URI_PROPERTY}.
+ *
+ * Tasks can be started, stopped or churned on a schedule; responses can be delayed, paged
+ * and throttled (randomly or by a call rate limit), and every call is counted per API.
+ */
+public class EcsApiSimulator implements AutoCloseable {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String ECS_TARGET_PREFIX = "AmazonEC2ContainerServiceV20141113.";
+    private static final String ACCOUNT = "123456789012";
+
+    public static final class SimulatedTask {
+        final int index;
+        final String arn;
+
+        SimulatedTask(int index, String arn) {
+            this.index = index;
+            this.arn = arn;
+        }
+
+        public String getArn() {
+            return arn;
+        }
+
+        public String getEniId() {
+            return "eni-" + String.format("%017x", index);
+        }
+
+        public String getPrivateIp() {
+            return "10." + ((index >> 16) & 255) + "." + ((index >> 8) & 255) + "." + (index & 255);
+        }
+    }
+
+    private final String clusterName;
+    private final String serviceName;
+    private final String region;
+    private final Map<String, SimulatedTask> running = new ConcurrentHashMap<>();
+    private final AtomicInteger taskIndexes = new AtomicInteger(1);
+    private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private final LongAdder throttled = new LongAdder();
+    private final ScheduledExecutorService churn = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "EcsApiSimulator-Churn");
+        t.setDaemon(true);
+        return t;
+    });
+    private final SimulatedTask self;
+    private HttpServer server;
+
+    private volatile long latencyMillis;
+    private volatile long latencyJitterMillis;
+    private volatile int pageSize = 100;
+    private volatile boolean ipsInAttachments = true;
+    private volatile double throttleProbability;
+    private volatile double rateLimit;  // Calls per second, 0 = unlimited
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    public EcsApiSimulator(String clusterName, String serviceName) {
+        this.clusterName = clusterName;
+        this.serviceName = serviceName;
+        this.region = "us-east-1";
+        this.self = startTask();  // The task the metadata endpoint describes
+    }
+
+    public EcsApiSimulator start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newFixedThreadPool(32, r -> {
+            Thread t = new Thread(r, "EcsApiSimulator");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.start();
+        return this;
+    }
+
+    // Endpoint override for the ECS and EC2 clients
+    public URI getEndpoint() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    // Value for ECS_CONTAINER_METADATA_URI_V4
+    public String getMetadataUri() {
+        return getEndpoint() + "/v4/" + self.index;
+    }
+
+    public String getClusterArn() {
+        return "arn:aws:ecs:" + region + ":" + ACCOUNT + ":cluster/" + clusterName;
+    }
+
+    // ---- Scripting ----
+
+    public SimulatedTask startTask() {
+        int index = taskIndexes.getAndIncrement();
+        SimulatedTask task = new SimulatedTask(index,
+                "arn:aws:ecs:" + region + ":" + ACCOUNT + ":task/" + clusterName + "/" + String.format("%032x", index));
+        running.put(task.arn, task);
+        return task;
+    }
+
+    public void stopTask(String arn) {
+        if (!arn.equals(self.arn)) {
+            running.remove(arn);
+        }
+    }
+
+    // Starts or stops tasks (never the metadata task) until exactly n are running
+    public synchronized void setRunningTasks(int n) {
+        while (running.size() < n) {
+            startTask();
+        }
+        Iterator<String> arns = new ArrayList<>(running.keySet()).iterator();
+        while (running.size() > Math.max(n, 1) && arns.hasNext()) {
+            stopTask(arns.next());
+        }
+    }
+
+    /**
+     * Every period, starts {@code starts} new tasks and stops {@code stops} random ones.
+     */
+    public void startChurn(long periodMillis, int starts, int stops) {
+        churn.scheduleAtFixedRate(() -> {
+            List<String> arns = new ArrayList<>(running.keySet());
+            Collections.shuffle(arns);
+            for (int i = 0; i < stops && i < arns.size(); i++) {
+                stopTask(arns.get(i));
+            }
+            for (int i = 0; i < starts; i++) {
+                startTask();
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public Collection<SimulatedTask> getRunningTasks() {
+        return Collections.unmodifiableCollection(running.values());
+    }
+
+    public void setLatency(long millis, long jitterMillis) {
+        this.latencyMillis = millis;
+        this.latencyJitterMillis = jitterMillis;
+    }
+
+    // ListTasks page size; the real API allows at most 100
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    // When false, task attachments only carry the ENI id, so callers must ask EC2 for the IP
+    public void setIpsInAttachments(boolean ipsInAttachments) {
+        this.ipsInAttachments = ipsInAttachments;
+    }
+
+    public void setThrottleProbability(double throttleProbability) {
+        this.throttleProbability = throttleProbability;
+    }
+
+    public synchronized void setRateLimit(double callsPerSecond) {
+        this.rateLimit = callsPerSecond;
+        this.tokens = callsPerSecond;
+        this.lastRefill = System.nanoTime();
+    }
+
+    // ---- Accounting ----
+
+    public long getCallCount(String api) {
+        LongAdder count = calls.get(api);
+        return count != null ? count.sum() : 0;
+    }
+
+    public Map<String, Long> getCallCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        calls.forEach((api, count) -> counts.put(api, count.sum()));
+        return counts;
+    }
+
+    public long getThrottledCount() {
+        return throttled.sum();
+    }
+
+    public void resetCounters() {
+        calls.clear();
+        throttled.reset();
+    }
+
+    // ---- HTTP ----
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            delay();
+            String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+            if ("GET".equals(exchange.getRequestMethod()) && exchange.getRequestURI().getPath().startsWith("/v4/")) {
+                count("TaskMetadata");
+                handleMetadata(exchange);
+            } else if (target != null && target.startsWith(ECS_TARGET_PREFIX)) {
+                handleEcs(exchange, target.substring(ECS_TARGET_PREFIX.length()));
+            } else {
+                handleEc2(exchange);
+            }
+        } catch (Exception e) {
+            send(exchange, 500, "text/plain", String.valueOf(e));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void delay() throws InterruptedException {
+        long millis = latencyMillis;
+        if (latencyJitterMillis > 0) {
+            millis += ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1);
+        }
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    private void count(String api) {
+        calls.computeIfAbsent(api, k -> new LongAdder()).increment();
+    }
+
+    private boolean shouldThrottle() {
+        if (throttleProbability > 0 && ThreadLocalRandom.current().nextDouble() < throttleProbability) {
+            return true;
+        }
+        synchronized (this) {
+            if (rateLimit <= 0) {
+                return false;
+            }
+            long now = System.nanoTime();
+            tokens = Math.min(rateLimit, tokens + (now - lastRefill) / 1e9 * rateLimit);
+            lastRefill = now;
+            if (tokens < 1) {
+                return true;
+            }
+            tokens--;
+            return false;
+        }
+    }
+
+    private void handleEcs(HttpExchange exchange, String action) throws IOException {
+        count(action);
+        JsonNode request = mapper.readTree(readBody(exchange));
+        if (shouldThrottle()) {
+            throttled.increment();
+            ecsError(exchange, "ThrottlingException", "Rate exceeded");
+            return;
+        }
+        switch (action) {
+            case "ListTasks":
+                listTasks(exchange, request);
+                break;
+            case "DescribeTasks":
+                describeTasks(exchange, request);
+                break;
+            case "ListTagsForResource":
+                ObjectNode tags = mapper.createObjectNode();
+                tags.putArray("tags").addObject().put("key", "ecs:serviceName").put("value", serviceName);
+                sendJson(exchange, tags);
+                break;
+            default:
+                ecsError(exchange, "UnknownOperationException", action + " is not simulated");
+        }
+    }
+
+    private boolean isOurCluster(JsonNode request) {
+        String cluster = request.path("cluster").asText("default");
+        return cluster.equals(clusterName) || cluster.equals(getClusterArn());
+    }
+
+    private void listTasks(HttpExchange exchange, JsonNode request) throws IOException {
+        List<String> arns = new ArrayList<>();
+        boolean service = !request.has("serviceName") || serviceName.equals(request.get("serviceName").asText());
+        if (isOurCluster(request) && service && !"STOPPED".equals(request.path("desiredStatus").asText())) {
+            arns.addAll(running.keySet());
+            Collections.sort(arns);
+        }
+        int limit = Math.min(pageSize, request.path("maxResults").asInt(pageSize));
+        int from = request.hasNonNull("nextToken") ? Integer.parseInt(request.get("nextToken").asText()) : 0;
+        int to = Math.min(from + limit, arns.size());
+
+        ObjectNode response = mapper.createObjectNode();
+        ArrayNode taskArns = response.putArray("taskArns");
+        for (int i = from; i < to; i++) {
+            taskArns.add(arns.get(i));
+        }
+        if (to < arns.size()) {
+            response.put("nextToken", String.valueOf(to));
+        }
+        sendJson(exchange, response);
+    }
+
+    private void describeTasks(HttpExchange exchange, JsonNode request) throws IOException {
+        if (request.path("tasks").size() > 100) {
+            ecsError(exchange, "InvalidParameterException", "Tasks cannot be longer than 100");
+            return;
+        }
+        ObjectNode response = mapper.createObjectNode();
+        ArrayNode tasks = response.putArray("tasks");
+        ArrayNode failures = response.putArray("failures");
+        for (JsonNode arn : request.path("tasks")) {
+            SimulatedTask task = isOurCluster(request) ? running.get(arn.asText()) : null;
+            if (task == null) {
+                failures.addObject().put("arn", arn.asText()).put("reason", "MISSING");
+                continue;
+            }
+            ObjectNode json = tasks.addObject()
+                    .put("taskArn", task.arn)
+                    .put("clusterArn", getClusterArn())
+                    .put("group", "service:" + serviceName)
+                    .put("lastStatus", "RUNNING")
+                    .put("desiredStatus", "RUNNING")
+                    .put("launchType", "FARGATE");
+            ArrayNode details = json.putArray("attachments").addObject()
+                    .put("id", UUID.nameUUIDFromBytes(task.arn.getBytes(StandardCharsets.UTF_8)).toString())
+                    .put("type", "ElasticNetworkInterface")
+                    .put("status", "ATTACHED")
+                    .putArray("details");
+            details.addObject().put("name", "networkInterfaceId").put("value", task.getEniId());
+            if (ipsInAttachments) {
+                details.addObject().put("name", "privateIPv4Address").put("value", task.getPrivateIp());
+            }
+        }
+        sendJson(exchange, response);
+    }
+
+    private void ecsError(HttpExchange exchange, String type, String message) throws IOException {
+        ObjectNode error = mapper.createObjectNode().put("__type", type).put("message", message);
+        send(exchange, 400, "application/x-amz-json-1.1", mapper.writeValueAsString(error));
+    }
+
+    private void handleEc2(HttpExchange exchange) throws IOException {
+        Map<String, List<String>> params = parseForm(readBody(exchange));
+        String action = first(params, "Action");
+        count(action != null ? action : "Unknown");
+        if (shouldThrottle()) {
+            throttled.increment();
+            ec2Error(exchange, 503, "RequestLimitExceeded", "Request limit exceeded.");
+            return;
+        }
+        if (!"DescribeNetworkInterfaces".equals(action)) {
+            ec2Error(exchange, 400, "InvalidAction", action + " is not simulated");
+            return;
+        }
+
+        Map<String, SimulatedTask> byEni = new HashMap<>();
+        for (SimulatedTask task : running.values()) {
+            byEni.put(task.getEniId(), task);
+        }
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<DescribeNetworkInterfacesResponse xmlns=\"http://ec2.amazonaws.com/doc/2016-11-15/\">")
+                .append("<requestId>").append(UUID.randomUUID()).append("</requestId>")
+                .append("<networkInterfaceSet>");
+        for (Map.Entry<String, List<String>> param : params.entrySet()) {
+            if (!param.getKey().startsWith("NetworkInterfaceId.")) {
+                continue;
+            }
+            SimulatedTask task = byEni.get(param.getValue().get(0));
+            if (task != null) {
+                xml.append("<item><networkInterfaceId>").append(task.getEniId()).append("</networkInterfaceId>")
+                        .append("<status>in-use</status>")
+                        .append("<privateIpAddress>").append(task.getPrivateIp()).append("</privateIpAddress>")
+                        .append("</item>");
+            }
+        }
+        xml.append("</networkInterfaceSet></DescribeNetworkInterfacesResponse>");
+        send(exchange, 200, "text/xml;charset=UTF-8", xml.toString());
+    }
+
+    private void ec2Error(HttpExchange exchange, int status, String code, String message) throws IOException {
+        send(exchange, status, "text/xml;charset=UTF-8", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<Response><Errors><Error><Code>" + code + "</Code><Message>" + message + "</Message></Error></Errors>"
+                + "<RequestID>" + UUID.randomUUID() + "</RequestID></Response>");
+    }
+
+    private void handleMetadata(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestURI().getPath().endsWith("/task")) {
+            send(exchange, 404, "text/plain", "Only /task is simulated");
+            return;
+        }
+        ObjectNode task = mapper.createObjectNode()
+                .put("Cluster", getClusterArn())
+                .put("TaskARN", self.arn)
+                .put("AvailabilityZone", region + "a");
+        ObjectNode network = task.putArray("Containers").addObject()
+                .put("Name", "app")
+                .putArray("Networks").addObject()
+                .put("NetworkMode", "awsvpc");
+        network.putArray("IPv4Addresses").add(self.getPrivateIp());
+        sendJson(exchange, task);
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, List<String>> parseForm(String body) {
+        Map<String, List<String>> params = new LinkedHashMap<>();
+        for (String pair : body.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+        }
+        return params;
+    }
+
+    private static String first(Map<String, List<String>> params, String key) {
+        List<String> values = params.get(key);
+        return values != null && !values.isEmpty() ? values.get(0) : null;
+    }
+
+    private static void sendJson(HttpExchange exchange, JsonNode body) throws IOException {
+        send(exchange, 200, "application/x-amz-json-1.1", mapper.writeValueAsString(body));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.getResponseHeaders().set("x-amzn-RequestId", UUID.randomUUID().toString());
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        churn.shutdownNow();
+        if (server != null) {
+            server.stop(0);
+            ((ExecutorService) server.getExecutor()).shutdownNow();
+        }
+    }
+
+    /**
+     * Runs incremental discovery against a churning simulated service and reports the time and
+     * API calls each refresh costs.
+     *
+     * Run with: java com.example.jgroups.ecs.EcsApiSimulator [tasks] [rounds] [latencyMs] [throttleProbability] [--eni]
+     */
+    public static void main(String[] args) throws Exception {
+        int taskCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long latency = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        double throttle = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+        boolean eni = Arrays.asList(args).contains("--eni");
+
+        try (EcsApiSimulator simulator = new EcsApiSimulator("sim-cluster", "sim-service").start()) {
+            simulator.setRunningTasks(taskCount);
+            simulator.setLatency(latency, latency / 2);
+            simulator.setThrottleProbability(throttle);
+            simulator.setIpsInAttachments(!eni);
+            simulator.startChurn(1000, Math.max(1, taskCount / 100), Math.max(1, taskCount / 100));
+
+            StaticCredentialsProvider credentials = StaticCredentialsProvider.create(AwsBasicCredentials.create("sim", "sim"));
+            EcsClient ecs = EcsClient.builder().endpointOverride(simulator.getEndpoint())
+                    .region(Region.US_EAST_1).credentialsProvider(credentials).build();
+            Ec2Client ec2 = Ec2Client.builder().endpointOverride(simulator.getEndpoint())
+                    .region(Region.US_EAST_1).credentialsProvider(credentials).build();
+
+            IncrementalTaskDiscovery discovery = new IncrementalTaskDiscovery(
+                    SharedDiscoveryCache.forService("sim-cluster", "sim-service",
+                            () -> new ECSTaskDiscoveryEngine(ecs, "sim-cluster", "sim-service", 4)),
+                    new EniAddressResolver(ec2), 0);
+
+            System.out.printf("Simulating %d tasks at %s (latency %d ms, throttle %.2f, %s)%n", taskCount,
+                    simulator.getEndpoint(), latency, throttle, eni ? "IPs from EC2" : "IPs in attachments");
+            for (int round = 1; round <= rounds; round++) {
+                simulator.resetCounters();
+                long start = System.nanoTime();
+                String result;
+                try {
+                    DiscoveryDelta delta = discovery.refresh();
+                    result = discovery.addresses().size() + " members, +" + delta.getAdded().size()
+                            + " -" + delta.getRemoved().size();
+                } catch (RuntimeException e) {
+                    result = "failed: " + e.getMessage();
+                }
+                System.out.printf("Round %2d: %6d ms  %-32s calls %s, throttled %d%n", round,
+                        (System.nanoTime() - start) / 1_000_000, result, simulator.getCallCounts(),
+                        simulator.getThrottledCount());
+                Thread.sleep(1000);
+            }
+        }
+    }
+}
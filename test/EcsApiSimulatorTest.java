@@ -0,0 +1,139 @@
+package com.example.jgroups.ecs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ec2.Ec2Client;
+import software.amazon.awssdk.services.ecs.EcsClient;
+import software.amazon.awssdk.services.ecs.model.EcsException;
+import software.amazon.awssdk.services.ecs.model.Task;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Discovery's AWS calls against the {@link EcsApiSimulator}: paging, DescribeTasks batching,
+ * ENI lookups, throttling and the task metadata endpoint.
+ */
+class EcsApiSimulatorTest {
+
+    private static final String CLUSTER = "test-cluster";
+    private static final String SERVICE = "test-service";
+
+    private EcsApiSimulator simulator;
+    private EcsClient ecs;
+    private Ec2Client ec2;
+
+    @BeforeEach
+    void startSimulator() throws IOException {
+        simulator = new EcsApiSimulator(CLUSTER, SERVICE).start();
+        // No SDK retries, so every call is counted once and throttling reaches the caller
+        ClientOverrideConfiguration noRetries = ClientOverrideConfiguration.builder().retryPolicy(RetryPolicy.none()).build();
+        StaticCredentialsProvider credentials = StaticCredentialsProvider.create(AwsBasicCredentials.create("sim", "sim"));
+        ecs = EcsClient.builder().endpointOverride(simulator.getEndpoint()).region(Region.US_EAST_1)
+                .credentialsProvider(credentials).overrideConfiguration(noRetries).build();
+        ec2 = Ec2Client.builder().endpointOverride(simulator.getEndpoint()).region(Region.US_EAST_1)
+                .credentialsProvider(credentials).overrideConfiguration(noRetries).build();
+    }
+
+    @AfterEach
+    void stopSimulator() {
+        ecs.close();
+        ec2.close();
+        simulator.close();
+    }
+
+    @Test
+    void listsEveryPageAndDescribesInBatchesOfHundred() {
+        simulator.setRunningTasks(250);
+        simulator.setPageSize(40);
+        simulator.resetCounters();
+
+        List<Task> tasks;
+        try (ECSTaskDiscoveryEngine engine = new ECSTaskDiscoveryEngine(ecs, CLUSTER, SERVICE, 4)) {
+            tasks = engine.describeRunningTasks();
+        }
+
+        assertEquals(runningIpsByArn().keySet(), tasks.stream().map(Task::taskArn).collect(Collectors.toSet()));
+        assertEquals(7, simulator.getCallCount("ListTasks"));  // 6 full pages of 40 and one of 10
+        assertEquals(3, simulator.getCallCount("DescribeTasks"));  // 100 + 100 + 50, independent of the page size
+    }
+
+    @Test
+    void acceptsTheClusterArn() {
+        simulator.setRunningTasks(5);
+        try (ECSTaskDiscoveryEngine engine = new ECSTaskDiscoveryEngine(ecs, simulator.getClusterArn(), SERVICE, 1)) {
+            assertEquals(runningIpsByArn().values().stream().collect(Collectors.toSet()), Set.copyOf(engine.getTaskIPs()));
+        }
+    }
+
+    @Test
+    void resolvesIpsFromEc2WhenAttachmentsOnlyCarryTheEni() {
+        simulator.setRunningTasks(150);
+        simulator.setIpsInAttachments(false);
+        List<Task> tasks;
+        try (ECSTaskDiscoveryEngine engine = new ECSTaskDiscoveryEngine(ecs, CLUSTER, SERVICE, 4)) {
+            tasks = engine.describeRunningTasks();
+        }
+        assertTrue(tasks.stream().allMatch(task -> ECSTaskDiscoveryEngine.privateIp(task) == null));
+
+        simulator.resetCounters();
+        EniAddressResolver resolver = new EniAddressResolver(ec2);
+        assertEquals(runningIpsByArn(), resolver.resolve(tasks));
+        assertEquals(2, simulator.getCallCount("DescribeNetworkInterfaces"));  // 100 + 50 ENIs
+
+        assertEquals(runningIpsByArn(), resolver.resolve(tasks));
+        assertEquals(2, simulator.getCallCount("DescribeNetworkInterfaces"), "cached ENIs are described again");
+    }
+
+    @Test
+    void throttledCallsSurfaceAsThrottling() {
+        simulator.setThrottleProbability(1.0);
+        try (ECSTaskDiscoveryEngine engine = new ECSTaskDiscoveryEngine(ecs, CLUSTER, SERVICE, 1)) {
+            RuntimeException e = assertThrows(RuntimeException.class, engine::listTaskArns);
+            assertTrue(AdaptiveRefreshScheduler.isThrottling(e), "not recognized as throttling: " + e);
+        }
+        assertEquals(1, simulator.getThrottledCount());
+    }
+
+    @Test
+    void rateLimitThrottlesCallsBeyondTheBudget() {
+        simulator.setRateLimit(5);
+        int throttled = 0;
+        for (int i = 0; i < 30; i++) {
+            try {
+                ecs.listTasks(r -> r.cluster(CLUSTER).serviceName(SERVICE));
+            } catch (EcsException e) {
+                assertTrue(AdaptiveRefreshScheduler.isThrottling(e), "not recognized as throttling: " + e);
+                throttled++;
+            }
+        }
+        assertTrue(throttled > 0, "no call was throttled");
+        assertEquals(throttled, simulator.getThrottledCount());
+        assertEquals(30, simulator.getCallCount("ListTasks"));
+    }
+
+    @Test
+    void servesTaskMetadataAndServiceTags() throws IOException {
+        TaskMetadataClient metadata = new TaskMetadataClient(simulator.getMetadataUri());
+        assertEquals(simulator.getClusterArn(), metadata.get().getCluster());
+        assertEquals("awsvpc", metadata.get().getNetworkMode());
+        assertEquals(SERVICE, metadata.getServiceName(ecs));
+        assertEquals(1, simulator.getCallCount("ListTagsForResource"));
+    }
+
+    private Map<String, String> runningIpsByArn() {
+        return simulator.getRunningTasks().stream()
+                .collect(Collectors.toMap(EcsApiSimulator.SimulatedTask::getArn, EcsApiSimulator.SimulatedTask::getPrivateIp));
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.jgroups.ecs;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ecs.EcsClient;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public final class HybridDnsDiscoveryDemo {
+
+    private HybridDnsDiscoveryDemo() {
+    }
+
+    /**
+     * Runs hybrid discovery against a churning {@link EcsApiSimulator} whose tasks a
+     * {@link DnsStubServer} publishes with a lag, and reports every second how many members
+     * are stale or missing compared to the tasks actually running, for DNS alone and hybrid.
+     *
+     * Run with: java com.example.jgroups.ecs.HybridDnsDiscoveryDemo [tasks] [seconds] [dnsLagMs] [reconcileMs]
+     */
+    public static void main(String[] args) throws Exception {
+        int taskCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        long dnsLag = args.length > 2 ? Long.parseLong(args[2]) : 5000;
+        long reconcileInterval = args.length > 3 ? Long.parseLong(args[3]) : 10000;
+        String name = "_jgroups._tcp.sim.local";
+
+        try (EcsApiSimulator simulator = new EcsApiSimulator("sim-cluster", "sim-service").start();
+             DnsStubServer dnsServer = new DnsStubServer().start()) {
+            simulator.setRunningTasks(taskCount);
+            simulator.startChurn(1000, Math.max(1, taskCount / 50), Math.max(1, taskCount / 50));
+            dnsServer.mirror(simulator, name, 7800, dnsLag);
+
+            EcsClient client = EcsClient.builder().endpointOverride(simulator.getEndpoint()).region(Region.US_EAST_1)
+                    .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("sim", "sim"))).build();
+            SharedDiscoveryCache.ServiceTasks registered = SharedDiscoveryCache.forService("sim-cluster", "sim-service",
+                    () -> new ECSTaskDiscoveryEngine(client, "sim-cluster", "sim-service", 4));
+            DnsTaskResolver resolver = new DnsTaskResolver(name, dnsServer.getServerUri(), 1000);
+            try (MultiServiceDiscovery ecs = new MultiServiceDiscovery(
+                    Collections.singletonList(new MultiServiceDiscovery.ServiceRef("sim-cluster", "sim-service")), 4, 0, 60000)) {
+                HybridDnsDiscovery hybrid = new HybridDnsDiscovery(resolver, ecs);
+                System.out.printf("Simulating %d tasks, DNS lag %d ms, reconciliation every %d ms%n", taskCount, dnsLag, reconcileInterval);
+                long nextReconcile = 0;
+                for (int tick = 1; tick <= seconds * 5; tick++) {
+                    long now = System.currentTimeMillis();
+                    if (now >= nextReconcile) {
+                        hybrid.reconcile();
+                        nextReconcile = now + reconcileInterval;
+                    }
+                    hybrid.refreshDns();
+                    if (tick % 5 == 0) {
+                        Set<String> running = new HashSet<>();
+                        simulator.getRunningTasks().forEach(task -> running.add(task.getPrivateIp()));
+                        System.out.printf("%3ds  running %4d  dns stale %3d missing %3d  hybrid stale %3d missing %3d  ecs calls %s%n",
+                                tick / 5, running.size(), difference(resolver.resolve(), running), difference(running, resolver.resolve()),
+                                difference(hybrid.addresses(), running), difference(running, hybrid.addresses()),
+                                simulator.getCallCounts());
+                    }
+                    Thread.sleep(200);
+                }
+            } finally {
+                registered.release();
+                client.close();
+            }
+        }
+    }
+
+    private static int difference(Set<String> a, Set<String> b) {
+        Set<String> result = new HashSet<>(a);
+        result.removeAll(b);
+        return result.size();
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.jgroups.ecs;
+
+import com.example.jgroups.ecs.AdaptiveRefreshScheduler.Outcome;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.ecs.EcsClient;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hybrid discovery with a {@link DnsStubServer} standing in for Cloud Map and an
+ * {@link EcsApiSimulator} for the ECS API: DNS lookups alone on the hot path, and ECS
+ * reconciliations that prune stopped tasks and add tasks DNS has not published yet.
+ */
+class HybridDnsDiscoveryTest {
+
+    private static final String CLUSTER = "hybrid-cluster";
+    private static final String NAME = "_jgroups._tcp.hybrid.local";
+
+    private EcsApiSimulator simulator;
+    private DnsStubServer dnsServer;
+    private EcsClient ecs;
+    private SharedDiscoveryCache.ServiceTasks registered;
+    private MultiServiceDiscovery ecsDiscovery;
+    private HybridDnsDiscovery hybrid;
+
+    @BeforeEach
+    void start(TestInfo test) throws IOException {
+        String service = "hybrid-" + test.getTestMethod().get().getName();  // The discovery cache is process-wide
+        simulator = new EcsApiSimulator(CLUSTER, service).start();
+        dnsServer = new DnsStubServer().start();
+        ecs = EcsClient.builder().endpointOverride(simulator.getEndpoint()).region(Region.US_EAST_1)
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("sim", "sim"))).build();
+        registered = SharedDiscoveryCache.forService(simulator.getClusterArn(), service,
+                () -> new ECSTaskDiscoveryEngine(ecs, CLUSTER, service, 4));
+        ecsDiscovery = new MultiServiceDiscovery(
+                Collections.singletonList(new MultiServiceDiscovery.ServiceRef(simulator.getClusterArn(), service)), 4, 0, 60000);
+        hybrid = new HybridDnsDiscovery(new DnsTaskResolver(NAME, dnsServer.getServerUri(), 1000), ecsDiscovery);
+    }
+
+    @AfterEach
+    void stop() {
+        ecsDiscovery.close();
+        registered.release();
+        ecs.close();
+        dnsServer.close();
+        simulator.close();
+    }
+
+    @Test
+    void dnsLookupsMakeNoEcsCalls() {
+        simulator.setRunningTasks(10);
+        publish(running());
+        simulator.resetCounters();
+
+        assertEquals(Outcome.CHANGED, hybrid.refreshDns());
+        assertEquals(running(), hybrid.addresses());
+        assertEquals(Outcome.UNCHANGED, hybrid.refreshDns());
+
+        assertTrue(simulator.getCallCounts().isEmpty(), "ECS called on the DNS path: " + simulator.getCallCounts());
+        assertTrue(dnsServer.getQueryCount() > 0);
+    }
+
+    @Test
+    void reconciliationPrunesStoppedTasksAndAddsUnpublishedOnes() {
+        simulator.setRunningTasks(20);
+        publish(running());
+        hybrid.refreshDns();
+        assertEquals(Outcome.UNCHANGED, hybrid.reconcile());  // DNS and ECS agree
+
+        // Scale-down DNS has not caught up with, and new tasks it has not published yet
+        Set<String> stopped = new HashSet<>();
+        for (EcsApiSimulator.SimulatedTask task : new ArrayList<>(simulator.getRunningTasks())) {
+            simulator.stopTask(task.getArn());
+            if (!simulator.getRunningTasks().contains(task)) {  // The metadata task is never stopped
+                stopped.add(task.getPrivateIp());
+            }
+            if (stopped.size() == 3) {
+                break;
+            }
+        }
+        Set<String> started = new HashSet<>();
+        for (int i = 0; i < 2; i++) {
+            started.add(simulator.startTask().getPrivateIp());
+        }
+        hybrid.refreshDns();
+        assertTrue(hybrid.addresses().containsAll(stopped), "DNS alone still reports the stopped tasks");
+
+        assertEquals(Outcome.CHANGED, hybrid.reconcile());
+        assertEquals(running(), hybrid.addresses());
+        assertEquals(3, hybrid.getStaleInDns());
+        assertEquals(2, hybrid.getMissingFromDns());
+
+        // Once DNS catches up, the lookups keep the reconciled set
+        publish(running());
+        hybrid.refreshDns();
+        assertEquals(running(), hybrid.addresses());
+        assertTrue(Collections.disjoint(hybrid.addresses(), stopped));
+        assertTrue(hybrid.addresses().containsAll(started));
+    }
+
+    @Test
+    void tasksPublishedAfterTheReconciliationAreTrusted() throws InterruptedException {
+        simulator.setRunningTasks(5);
+        publish(running());
+        hybrid.refreshDns();
+        hybrid.reconcile();
+
+        Thread.sleep(5);  // Published strictly after the ECS snapshot was taken
+        String added = simulator.startTask().getPrivateIp();
+        publish(running());
+        assertEquals(Outcome.CHANGED, hybrid.refreshDns());
+        assertTrue(hybrid.addresses().contains(added), "a newly published task waits for the next reconciliation");
+    }
+
+    private Set<String> running() {
+        Set<String> ips = new HashSet<>();
+        simulator.getRunningTasks().forEach(task -> ips.add(task.getPrivateIp()));
+        return ips;
+    }
+
+    private void publish(Collection<String> ips) {
+        dnsServer.setSrv(NAME, 7800, ips);
+    }
+}
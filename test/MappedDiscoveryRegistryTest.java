@@ -0,0 +1,98 @@
+package com.example.jgroups.ping;
+
+import org.jgroups.stack.IpAddress;
+import org.jgroups.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Slots left behind by a JVM that died in the middle of a write: the sequence stays odd, and
+ * neither a writer reclaiming the slot nor clear() may wait for it forever.
+ */
+class MappedDiscoveryRegistryTest {
+
+    private static final int SLOTS = 4;
+    private static final long EXPIRY = 200;
+
+    private Path file;
+
+    @BeforeEach
+    void createFile() throws IOException {
+        file = Files.createTempFile("registry", ".mmap");
+    }
+
+    @AfterEach
+    void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    @Timeout(5)
+    void reclaimsSlotsOfWritersThatDiedMidWrite() throws Exception {
+        try (MappedDiscoveryRegistry registry = new MappedDiscoveryRegistry(file.toString(), SLOTS, EXPIRY)) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                abandonMidWrite(slot, "other-cluster");
+            }
+
+            UUID member = UUID.randomUUID();
+            registry.write("cluster", member, new IpAddress("127.0.0.1", 7800), null);
+
+            assertEquals(new IpAddress("127.0.0.1", 7800), registry.read("cluster").get(member).getVal1());
+        }
+    }
+
+    @Test
+    @Timeout(5)
+    void clearDoesNotWaitForDeadWriters() throws Exception {
+        try (MappedDiscoveryRegistry registry = new MappedDiscoveryRegistry(file.toString(), SLOTS, EXPIRY)) {
+            registry.write("cluster", UUID.randomUUID(), new IpAddress("127.0.0.1", 7800), null);  // Slot 0
+            abandonMidWrite(1, "other-cluster");
+            abandonMidWrite(2, "cluster");
+
+            registry.clear("cluster");
+
+            assertTrue(registry.read("cluster").isEmpty());
+            assertEquals(7, sequence(1), "a slot of another cluster was written");
+            assertEquals(0, sequence(2) & 1);
+        }
+    }
+
+    // What a JVM killed between beginWrite and endWrite leaves in the file
+    private void abandonMidWrite(int slot, String cluster) throws IOException {
+        MappedByteBuffer buffer = map();
+        int base = 64 + slot * MappedDiscoveryRegistry.SLOT_SIZE;
+        byte[] name = cluster.getBytes();
+        buffer.putLong(base, 7);                                              // Odd sequence
+        buffer.putLong(base + 8, 42);                                         // Owner token
+        buffer.putLong(base + 16, System.currentTimeMillis() - 10 * EXPIRY);  // Expired heartbeat
+        buffer.putShort(base + 62, (short) name.length);
+        for (int i = 0; i < name.length; i++) {
+            buffer.put(base + 64 + i, name[i]);
+        }
+        buffer.force();
+    }
+
+    private long sequence(int slot) throws IOException {
+        return map().getLong(64 + slot * MappedDiscoveryRegistry.SLOT_SIZE);
+    }
+
+    private MappedByteBuffer map() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            buffer.order(ByteOrder.nativeOrder());
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.jgroups.ecs;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.function.ToDoubleFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicrometerDiscoveryMetricsTest {
+
+    // Loads this project's classes itself and refuses Micrometer's, like an application that does not ship Micrometer
+    private static final class WithoutMicrometer extends URLClassLoader {
+
+        WithoutMicrometer() {
+            super(new URL[]{MicrometerDiscoveryMetrics.class.getProtectionDomain().getCodeSource().getLocation()},
+                    MicrometerDiscoveryMetricsTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (name.startsWith("io.micrometer.")) {
+                throw new ClassNotFoundException(name);
+            }
+            if (!name.startsWith("com.example.jgroups.")) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    loaded = findClass(name);
+                }
+                if (resolve) {
+                    resolveClass(loaded);
+                }
+                return loaded;
+            }
+        }
+    }
+
+    @Test
+    void loadsAndDoesNothingWithoutMicrometer() throws Exception {
+        try (WithoutMicrometer loader = new WithoutMicrometer()) {
+            Class<?> metrics = Class.forName(MicrometerDiscoveryMetrics.class.getName(), true, loader);
+            assertEquals(Boolean.FALSE, metrics.getMethod("isAvailable").invoke(null));
+            metrics.getMethod("bindShared").invoke(null);
+            ToDoubleFunction<Object> value = target -> 1;
+            metrics.getMethod("gauge", String.class, String.class, Object.class, ToDoubleFunction.class, String[].class)
+                    .invoke(null, "test.gauge", "Gauge", new Object(), value, new String[0]);
+            metrics.getMethod("counter", String.class, String.class, Object.class, ToDoubleFunction.class, String[].class)
+                    .invoke(null, "test.counter", "Counter", new Object(), value, new String[0]);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.jgroups.ecs;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PhiAccrualDetectorTest {
+
+    @Test
+    void phiGrowsWithTheTimeSinceTheLastHeartbeat() {
+        PhiAccrualDetector detector = new PhiAccrualDetector(100, 50, 0);
+        for (int i = 0; i <= 20; i++) {
+            detector.heartbeat("10.0.0.1", i * 1000L, 2);
+        }
+        long last = 20_000;
+        assertTrue(detector.phi("10.0.0.1", last + 1000) < 1);
+        assertTrue(detector.phi("10.0.0.1", last + 3000) > 8);
+        long delay = detector.suspicionDelay("10.0.0.1", 8);
+        assertTrue(delay > 1000 && delay < 3000, "delay " + delay);
+    }
+
+    @Test
+    void recordsTheRttOfTheFirstHeartbeat() {
+        PhiAccrualDetector detector = new PhiAccrualDetector(10, 50, 0);
+        detector.heartbeat("10.0.0.1", 1000, 7);
+        assertEquals(0, detector.phi("10.0.0.1", 2000));  // No interval yet
+        assertEquals(7, detector.rttPercentile("10.0.0.1", 50));
+    }
+}
@@ -0,0 +1,92 @@
+import com.example.jgroups.ecs.SwimMembership;
+import com.example.jgroups.ecs.SwimMembership.State;
+import com.example.jgroups.ecs.SwimMembership.Update;
+import org.jgroups.util.ByteArrayDataInputStream;
+import org.jgroups.util.ByteArrayDataOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round trips of the binary {@link ECSTaskPingProtocol.Ping} header: every field survives
+ * writeTo/readFrom, serializedSize matches the bytes written, and malformed input is rejected.
+ */
+class PingHeaderTest {
+
+    @Test
+    void probeWithoutUpdatesRoundTrips() throws IOException {
+        ECSTaskPingProtocol.Ping ping = ECSTaskPingProtocol.Ping.probe("10.0.1.2", "10.0.123.45", 1_700_000_000_000L, 42,
+                Collections.emptyList());
+
+        ECSTaskPingProtocol.Ping read = roundTrip(ping);
+
+        assertEquals(ECSTaskPingProtocol.Ping.PROBE, read.getType());
+        assertEquals("10.0.1.2", read.getFrom());
+        assertEquals("10.0.123.45", read.getTo());
+        assertEquals("10.0.123.45", read.getNode());
+        assertEquals(1_700_000_000_000L, read.getTimestamp());
+        assertEquals(42, read.getSeq());
+        assertTrue(read.getUpdates().isEmpty());
+    }
+
+    @Test
+    void ackWithUpdatesRoundTrips() throws IOException {
+        List<Update> updates = Arrays.asList(new Update("10.0.0.1", State.ALIVE, 0),
+                new Update("10.0.0.2", State.SUSPECT, 300), new Update("255.255.255.255", State.DEAD, Integer.MAX_VALUE));
+        ECSTaskPingProtocol.Ping ping = ECSTaskPingProtocol.Ping.ack("10.0.9.9", "10.0.1.2", 5, 7, updates);
+
+        ECSTaskPingProtocol.Ping read = roundTrip(ping);
+
+        assertEquals(ECSTaskPingProtocol.Ping.ACK, read.getType());
+        assertEquals("10.0.9.9", read.getNode());
+        assertEquals("10.0.1.2", read.getTo());
+        assertEquals(updates.toString(), read.getUpdates().toString());
+    }
+
+    @Test
+    void keepsAtMostMaxUpdates() throws IOException {
+        List<Update> updates = new ArrayList<>();
+        for (int i = 0; i < ECSTaskPingProtocol.Ping.MAX_UPDATES + 5; i++) {
+            updates.add(new Update("10.0.0." + i, State.ALIVE, i));
+        }
+        ECSTaskPingProtocol.Ping ping = ECSTaskPingProtocol.Ping.probeRequest("10.0.1.2", "10.0.1.3", "10.0.1.4", 1, updates);
+
+        assertEquals(updates.subList(0, ECSTaskPingProtocol.Ping.MAX_UPDATES).toString(), roundTrip(ping).getUpdates().toString());
+    }
+
+    @Test
+    void rejectsUnknownTypesAndStates() throws IOException {
+        byte[] bytes = write(ECSTaskPingProtocol.Ping.probe("10.0.1.2", "10.0.1.3", 1, 1,
+                Collections.singletonList(new Update("10.0.0.1", State.ALIVE, 1))));
+
+        byte[] badType = bytes.clone();
+        badType[0] = 9;
+        assertThrows(IOException.class, () -> new ECSTaskPingProtocol.Ping().readFrom(new ByteArrayDataInputStream(badType)));
+
+        byte[] badState = bytes.clone();
+        badState[bytes.length - 2] = (byte) SwimMembership.State.values().length;  // State byte, before the 1-byte incarnation
+        assertThrows(IOException.class, () -> new ECSTaskPingProtocol.Ping().readFrom(new ByteArrayDataInputStream(badState)));
+    }
+
+    private static ECSTaskPingProtocol.Ping roundTrip(ECSTaskPingProtocol.Ping ping) throws IOException {
+        byte[] bytes = write(ping);
+        assertEquals(ping.serializedSize(), bytes.length);
+        ECSTaskPingProtocol.Ping read = new ECSTaskPingProtocol.Ping();
+        ByteArrayDataInputStream in = new ByteArrayDataInputStream(bytes);
+        read.readFrom(in);
+        assertEquals(bytes.length, in.position(), "bytes left over");
+        return read;
+    }
+
+    private static byte[] write(ECSTaskPingProtocol.Ping ping) throws IOException {
+        ByteArrayDataOutputStream out = new ByteArrayDataOutputStream(64);
+        ping.writeTo(out);
+        return Arrays.copyOf(out.buffer(), out.position());
+    }
+}
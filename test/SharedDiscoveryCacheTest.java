@@ -0,0 +1,60 @@
+package com.example.jgroups.ecs;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedDiscoveryCacheTest {
+
+    @Test
+    void clustersOfOtherAccountsOrRegionsGetTheirOwnEntry() {
+        String prod = SharedDiscoveryCache.clusterKey("arn:aws:ecs:us-east-1:111111111111:cluster/app");
+        assertNotEquals(prod, SharedDiscoveryCache.clusterKey("arn:aws:ecs:us-east-1:222222222222:cluster/app"));
+        assertNotEquals(prod, SharedDiscoveryCache.clusterKey("arn:aws:ecs:eu-west-1:111111111111:cluster/app"));
+        assertEquals(prod, SharedDiscoveryCache.clusterKey("arn:aws:ecs:us-east-1:111111111111:cluster/app"));
+    }
+
+    @Test
+    void namesOffEcsAreNotMistakenForAnArn() {
+        assertEquals("app", SharedDiscoveryCache.clusterKey("app"));
+        assertNotEquals(SharedDiscoveryCache.clusterKey("app"),
+                SharedDiscoveryCache.clusterKey("arn:aws:ecs:us-east-1:111111111111:cluster/app"));
+    }
+
+    @Test
+    void theLastReleaseDropsTheEntryAndClosesItsEngine() {
+        String cluster = "arn:aws:ecs:us-east-1:111111111111:cluster/release";
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger closed = new AtomicInteger();
+        Supplier<ECSTaskDiscoveryEngine> engine = () -> {
+            created.incrementAndGet();
+            return new ECSTaskDiscoveryEngine(null, cluster, "svc", 1) {
+                @Override
+                public void close() {
+                    closed.incrementAndGet();
+                    super.close();
+                }
+            };
+        };
+
+        SharedDiscoveryCache.ServiceTasks first = SharedDiscoveryCache.forService(cluster, "svc", engine);
+        SharedDiscoveryCache.ServiceTasks second = SharedDiscoveryCache.forService(cluster, "svc", engine);
+        assertSame(first, second);
+        assertEquals(1, created.get(), "a later registrant's engine was created");
+
+        first.release();
+        assertEquals(0, closed.get());
+        assertSame(second, SharedDiscoveryCache.forService(cluster, "svc", engine));
+        second.release();
+        second.release();
+        assertEquals(1, closed.get());
+
+        SharedDiscoveryCache.ServiceTasks next = SharedDiscoveryCache.forService(cluster, "svc", engine);
+        assertNotSame(first, next);
+        assertEquals(2, created.get());
+        next.release();
+    }
+}